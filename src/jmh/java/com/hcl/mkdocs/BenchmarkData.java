@@ -0,0 +1,87 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Inputs shaped like a real documentation site: every patch
+ * release is a version, pages carry a few front-matter keys
+ */
+final class BenchmarkData {
+
+  /**
+   * @param count number of versions
+   * @return version strings like v3.2.0.1, ascending
+   */
+  static List<String> versionStrings(final int count) {
+    final List<String> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(String.format("v%s.%s.%s.%s", 1 + i / 12, i / 4 % 3, i % 4, i % 2));
+    }
+    return result;
+  }
+
+  /**
+   * @param title page title
+   * @param maxVersion max_version value, null for none
+   * @param bodyLines number of markdown lines after the front-matter
+   * @return markdown source
+   */
+  static String markdown(final String title, final String maxVersion, final int bodyLines) {
+    final StringBuilder b = new StringBuilder();
+    b.append("---\n");
+    b.append("title: ").append(title).append('\n');
+    b.append("description: Generated page for benchmarks\n");
+    b.append("tags:\n  - install\n  - admin\n");
+    b.append("search:\n  boost: 2\n");
+    if (maxVersion != null) {
+      b.append(PreprocessorConfig.DOC_MAX_VERSION).append(": ").append(maxVersion).append('\n');
+    }
+    b.append("---\n");
+    b.append("# ").append(title).append("\n\n");
+    for (int i = 0; i < bodyLines; i++) {
+      b.append("Line ").append(i)
+          .append(" of the page, with [a link](../other/index.md) and `some code`.\n");
+    }
+    return b.toString();
+  }
+
+  static void write(final Path file, final String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+  }
+
+  static void delete(final Path root) throws IOException {
+    try (Stream<Path> all = Files.walk(root)) {
+      for (final Path p : all.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(p);
+      }
+    }
+  }
+
+  private BenchmarkData() {
+    // Static only
+  }
+}
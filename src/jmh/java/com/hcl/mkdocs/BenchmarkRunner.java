@@ -0,0 +1,110 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, writes the results
+ * as JSON and compares them with a baseline result file when one is given
+ * with -Djmh.baseline. All benchmarks report average time, lower is better
+ */
+public class BenchmarkRunner {
+
+  /**
+   * Changes below this ratio are considered noise
+   */
+  static final double THRESHOLD = 0.1;
+
+  public static void main(final String[] args)
+      throws CommandLineOptionException, RunnerException, IOException {
+    final String result = System.getProperty("jmh.result", "target/jmh-result.json");
+    final String baseline = System.getProperty("jmh.baseline", "");
+    final Collection<RunResult> results = new Runner(new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .resultFormat(ResultFormatType.JSON)
+        .result(result)
+        .build()).run();
+    if (!baseline.isBlank()) {
+      BenchmarkRunner.compare(Path.of(baseline), results);
+    }
+  }
+
+  static String keyOf(final String benchmark, final Map<String, String> params) {
+    return params.isEmpty() ? benchmark : benchmark + " " + new TreeMap<>(params);
+  }
+
+  @SuppressWarnings("unchecked")
+  static Map<String, Double> readBaseline(final Path baseline) throws IOException {
+    final Map<String, Double> result = new HashMap<>();
+    // JMH writes plain JSON, which is valid YAML
+    final List<Map<String, Object>> entries =
+        new Yaml().load(Files.readString(baseline, StandardCharsets.UTF_8));
+    for (final Map<String, Object> entry : entries) {
+      final Map<String, String> params = new HashMap<>();
+      final Object p = entry.get("params");
+      if (p instanceof Map) {
+        ((Map<String, Object>) p).forEach((k, v) -> params.put(k, String.valueOf(v)));
+      }
+      final Map<String, Object> metric = (Map<String, Object>) entry.get("primaryMetric");
+      result.put(BenchmarkRunner.keyOf(String.valueOf(entry.get("benchmark")), params),
+          ((Number) metric.get("score")).doubleValue());
+    }
+    return result;
+  }
+
+  static void compare(final Path baseline, final Collection<RunResult> results)
+      throws IOException {
+    final Map<String, Double> before = BenchmarkRunner.readBaseline(baseline);
+    System.out.printf("%nCompared with %s%n", baseline);
+    for (final RunResult r : results) {
+      final Map<String, String> params = new HashMap<>();
+      r.getParams().getParamsKeys().forEach(k -> params.put(k, r.getParams().getParam(k)));
+      final String key = BenchmarkRunner.keyOf(r.getParams().getBenchmark(), params);
+      final double now = r.getPrimaryResult().getScore();
+      final Double old = before.get(key);
+      if (old == null) {
+        System.out.printf("  %-90s %12.3f %s (new)%n", key, now,
+            r.getPrimaryResult().getScoreUnit());
+        continue;
+      }
+      final double change = (now - old) / old;
+      final String verdict = change > BenchmarkRunner.THRESHOLD
+          ? "SLOWER"
+          : change < -BenchmarkRunner.THRESHOLD ? "faster" : "";
+      System.out.printf("  %-90s %12.3f -> %12.3f %s %+7.1f%% %s%n", key, old, now,
+          r.getPrimaryResult().getScoreUnit(), change * 100, verdict);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing and ordering of versions, called for every file and map lookup
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocVersionBenchmark {
+
+  List<String> strings;
+  List<Path> paths;
+  DocVersion[] shuffled;
+
+  @Setup
+  public void setup() {
+    this.strings = BenchmarkData.versionStrings(30);
+    this.paths = new ArrayList<>();
+    this.strings.forEach(
+        v -> this.paths.add(Path.of("docs", "current", "admin", "install." + v + ".md")));
+    this.paths.add(Path.of("docs", "current", "admin", "install.md"));
+    final List<DocVersion> versions = new ArrayList<>();
+    this.strings.forEach(v -> versions.add(DocVersion.fromString(v)));
+    Collections.shuffle(versions, new Random(42));
+    this.shuffled = versions.toArray(new DocVersion[0]);
+  }
+
+  @Benchmark
+  public void fromString(final Blackhole bh) {
+    for (final String s : this.strings) {
+      bh.consume(DocVersion.fromString(s));
+    }
+  }
+
+  @Benchmark
+  public void fromPath(final Blackhole bh) {
+    for (final Path p : this.paths) {
+      bh.consume(DocVersion.fromPath(p));
+    }
+  }
+
+  @Benchmark
+  public DocVersion[] compareTo() {
+    final DocVersion[] result = this.shuffled.clone();
+    Arrays.sort(result);
+    return result;
+  }
+}
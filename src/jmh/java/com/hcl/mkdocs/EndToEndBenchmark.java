@@ -0,0 +1,171 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Builds a generated site with processFiles and then edits pages while
+ * the watcher runs. Reports wall time, files per second, peak RSS and
+ * the time from saving a source until its output is written
+ */
+public class EndToEndBenchmark {
+
+  /**
+   * Usage: EndToEndBenchmark [root=target/site] [pages=1000] [versions=10] [assets=50]
+   * [runs=3] [edits=20] [parallelism=1] [regenerate=false]
+   *
+   * @param args key=value settings, passed on to SiteGenerator
+   * @throws Exception when the build or a watcher fails
+   */
+  public static void main(final String[] args) throws Exception {
+    final Map<String, String> settings = SiteGenerator.settings(args);
+    final Path source = Path.of(settings.getOrDefault("root", "target/site"));
+    final Path target = Path.of(source + "-target");
+    final SiteGenerator generator = new SiteGenerator(settings);
+    if (Boolean.parseBoolean(settings.get("regenerate")) || !source.toFile().exists()) {
+      if (source.toFile().exists()) {
+        BenchmarkData.delete(source);
+      }
+      final long start = System.nanoTime();
+      generator.generate(source);
+      System.out.printf("Generated %s pages x %s versions in %s ms%n", generator.pages,
+          generator.versions.size(), EndToEndBenchmark.millis(start));
+    }
+
+    final int runs = SiteGenerator.getInt(settings, "runs", 3);
+    final int parallelism = SiteGenerator.getInt(settings, "parallelism", 1);
+    MkDocsPreprocessor last = null;
+    for (int run = 1; run <= runs; run++) {
+      if (target.toFile().exists()) {
+        BenchmarkData.delete(target);
+      }
+      last = new MkDocsPreprocessor(source, target, generator.versions, true, true,
+          WatchMode.NONE);
+      last.config.parallelism = parallelism;
+      final long start = System.nanoTime();
+      last.processFiles();
+      final double seconds = (System.nanoTime() - start) / 1e9;
+      final long outputs = EndToEndBenchmark.countFiles(target);
+      System.out.printf("Build %s: %.2f s, %s outputs, %.0f files/s, peak RSS %s%n", run,
+          seconds, outputs, outputs / seconds, EndToEndBenchmark.peakRss());
+    }
+
+    EndToEndBenchmark.measureWatch(last, generator, source, target,
+        SiteGenerator.getInt(settings, "edits", 20));
+  }
+
+  static void measureWatch(final MkDocsPreprocessor mdp, final SiteGenerator generator,
+      final Path source, final Path target, final int edits) throws Exception {
+    final Path current = source.resolve(PreprocessorConfig.DOCS_PATH)
+        .resolve(PreprocessorConfig.DOC_CURRENT_PATH);
+    final Path latest = target.resolve(PreprocessorConfig.DOCS_PATH)
+        .resolve(generator.versions.get(generator.versions.size() - 1));
+    final List<Long> latencies = new ArrayList<>();
+    try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+      mdp.startWatching(watchService, source);
+      final Thread watcher = new Thread(() -> mdp.watchLoop(watchService), "watcher");
+      watcher.setDaemon(true);
+      watcher.start();
+      int page = 1;
+      for (int edit = 0; edit < edits; edit++) {
+        while (!SiteGenerator.isPlain(page)) {
+          page++;
+        }
+        final String path = SiteGenerator.pagePath(page % generator.pages);
+        final String marker = "Edit " + edit + " " + System.nanoTime();
+        final long start = System.nanoTime();
+        Files.writeString(current.resolve(path), marker + "\n", StandardCharsets.UTF_8,
+            StandardOpenOption.APPEND);
+        if (EndToEndBenchmark.waitFor(latest.resolve(path), marker, 30000)) {
+          latencies.add(System.nanoTime() - start);
+        } else {
+          System.err.printf("No output for %s after 30 s%n", path);
+        }
+        page += 7;
+        // Keep the edits in separate batches
+        Thread.sleep(mdp.config.watchQuietPeriod + 100L);
+      }
+      watcher.interrupt();
+    }
+    if (latencies.isEmpty()) {
+      return;
+    }
+    Collections.sort(latencies);
+    System.out.printf(
+        "Watch: %s edits, event to output min %s ms, median %s ms, p95 %s ms, max %s ms"
+            + " (includes watch_quiet_period of %s ms)%n",
+        latencies.size(), latencies.get(0) / 1000000,
+        latencies.get(latencies.size() / 2) / 1000000,
+        latencies.get((int) (latencies.size() * 0.95)) / 1000000,
+        latencies.get(latencies.size() - 1) / 1000000, mdp.config.watchQuietPeriod);
+  }
+
+  static boolean waitFor(final Path output, final String marker, final long timeout)
+      throws InterruptedException {
+    final long end = System.currentTimeMillis() + timeout;
+    while (System.currentTimeMillis() < end) {
+      try {
+        if (Files.readString(output, StandardCharsets.UTF_8).contains(marker)) {
+          return true;
+        }
+      } catch (final IOException e) {
+        // Not written yet
+      }
+      Thread.sleep(2);
+    }
+    return false;
+  }
+
+  static long countFiles(final Path root) throws IOException {
+    try (Stream<Path> all = Files.walk(root)) {
+      return all.filter(Files::isRegularFile).count();
+    }
+  }
+
+  static long millis(final long start) {
+    return (System.nanoTime() - start) / 1000000;
+  }
+
+  /**
+   * @return high water mark of the resident set size, Linux only
+   */
+  static String peakRss() {
+    try {
+      for (final String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+        if (line.startsWith("VmHWM:")) {
+          return line.substring(6).trim();
+        }
+      }
+    } catch (final IOException e) {
+      // Not available on this platform
+    }
+    final Runtime rt = Runtime.getRuntime();
+    return String.format("n/a, heap %s MB", (rt.totalMemory() - rt.freeMemory()) >> 20);
+  }
+}
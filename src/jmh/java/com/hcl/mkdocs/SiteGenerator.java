@@ -0,0 +1,199 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Writes a synthetic source tree in the layout the preprocessor expects:
+ * docs/current with .vN.md variants and max_version front-matter, nested
+ * .pages with version variants, binary assets, a landing page and
+ * theme_overrides. The same settings always produce the same tree
+ */
+public class SiteGenerator {
+
+  /**
+   * Usage: SiteGenerator [root=target/site] [pages=1000] [versions=10] [assets=50]
+   *
+   * @param args key=value settings
+   * @throws IOException when writing fails
+   */
+  public static void main(final String[] args) throws IOException {
+    final Map<String, String> settings = SiteGenerator.settings(args);
+    final SiteGenerator generator = new SiteGenerator(settings);
+    final long start = System.nanoTime();
+    generator.generate(Path.of(settings.getOrDefault("root", "target/site")));
+    System.out.printf("Generated %s pages, %s versions, %s assets in %s ms%n", generator.pages,
+        generator.versions.size(), generator.assets, (System.nanoTime() - start) / 1000000);
+  }
+
+  static Map<String, String> settings(final String[] args) {
+    final Map<String, String> result = new HashMap<>();
+    for (final String arg : args) {
+      final int split = arg.indexOf('=');
+      if (split > 0) {
+        result.put(arg.substring(0, split), arg.substring(split + 1));
+      }
+    }
+    return result;
+  }
+
+  static int getInt(final Map<String, String> settings, final String key, final int fallback) {
+    return settings.containsKey(key) ? Integer.parseInt(settings.get(key)) : fallback;
+  }
+
+  /**
+   * Pages per directory
+   */
+  static final int FANOUT = 25;
+  /**
+   * Every n-th page gets a variant for a later version
+   */
+  static final int VARIANT_EVERY = 10;
+  /**
+   * Every n-th page ends with a max_version
+   */
+  static final int MAX_VERSION_EVERY = 15;
+
+  final int pages;
+  final int assets;
+  final int assetSize;
+  final int bodyLines;
+  final List<String> versions;
+  final Random random = new Random(4711);
+
+  public SiteGenerator(final Map<String, String> settings) {
+    this.pages = SiteGenerator.getInt(settings, "pages", 1000);
+    this.assets = SiteGenerator.getInt(settings, "assets", 50);
+    this.assetSize = SiteGenerator.getInt(settings, "assetSize", 32 * 1024);
+    this.bodyLines = SiteGenerator.getInt(settings, "bodyLines", 40);
+    this.versions =
+        BenchmarkData.versionStrings(SiteGenerator.getInt(settings, "versions", 10));
+  }
+
+  /**
+   * @param i number of the page
+   * @return path of the page below docs/current, without version
+   */
+  static String pagePath(final int i) {
+    final int dir = i / SiteGenerator.FANOUT;
+    return String.format("section%s/topic%s/page%s.md", dir / SiteGenerator.FANOUT,
+        dir % SiteGenerator.FANOUT, i);
+  }
+
+  /**
+   * @param i number of the page
+   * @return true when the page has one source for all versions
+   */
+  static boolean isPlain(final int i) {
+    return i % SiteGenerator.VARIANT_EVERY != 0 && i % SiteGenerator.MAX_VERSION_EVERY != 0;
+  }
+
+  public void generate(final Path root) throws IOException {
+    final Path docs = root.resolve(PreprocessorConfig.DOCS_PATH);
+    final Path current = docs.resolve(PreprocessorConfig.DOC_CURRENT_PATH);
+    this.writeSettings(root);
+    this.writeLanding(docs);
+
+    final StringBuilder sectionNav = new StringBuilder("nav:\n");
+    StringBuilder topicNav = new StringBuilder("nav:\n");
+    for (int i = 0; i < this.pages; i++) {
+      final Path page = current.resolve(SiteGenerator.pagePath(i));
+      final String last = this.versions.get(this.versions.size() - 1);
+      String maxVersion = null;
+      if (i % SiteGenerator.MAX_VERSION_EVERY == 0 && this.versions.size() > 1) {
+        maxVersion = this.versions.get(this.random.nextInt(this.versions.size() - 1));
+      }
+      BenchmarkData.write(page, this.markdown("Page " + i, maxVersion));
+      if (i % SiteGenerator.VARIANT_EVERY == 0 && this.versions.size() > 1) {
+        final String from = this.versions.get(1 + this.random.nextInt(this.versions.size() - 1));
+        final String name = page.getFileName().toString().replace(".md", "." + from + ".md");
+        BenchmarkData.write(page.resolveSibling(name), this.markdown("Page " + i + " new", null));
+      }
+      // Some links point to pages missing in older versions
+      topicNav.append("  - page").append(i).append(".md\n");
+      if (i % SiteGenerator.FANOUT == SiteGenerator.FANOUT - 1 || i == this.pages - 1) {
+        final Path folder = page.getParent();
+        topicNav.append("  - Elsewhere: ../../section0/topic0/page1.md\n");
+        BenchmarkData.write(folder.resolve(PreprocessorConfig.PAGES), topicNav.toString());
+        if (i / SiteGenerator.FANOUT % 7 == 0 && this.versions.size() > 2) {
+          int first = i - i % SiteGenerator.FANOUT;
+          while (!SiteGenerator.isPlain(first) && first < i) {
+            first++;
+          }
+          BenchmarkData.write(folder.resolve(last + PreprocessorConfig.PAGES),
+              topicNav.toString().replace("nav:\n",
+                  "nav:\n  - Latest first: page" + first + ".md\n"));
+        }
+        topicNav = new StringBuilder("nav:\n");
+        final Path section = folder.getParent();
+        sectionNav.append("  - ").append(folder.getFileName()).append(": ./")
+            .append(folder.getFileName()).append("/\n");
+        if (i / SiteGenerator.FANOUT % SiteGenerator.FANOUT == SiteGenerator.FANOUT - 1
+            || i == this.pages - 1) {
+          BenchmarkData.write(section.resolve(PreprocessorConfig.PAGES), sectionNav.toString());
+          sectionNav.setLength(0);
+          sectionNav.append("nav:\n");
+        }
+      }
+      if (i % 10000 == 9999) {
+        System.out.printf("  %s pages%n", i + 1);
+      }
+    }
+
+    final byte[] asset = new byte[this.assetSize];
+    for (int i = 0; i < this.assets; i++) {
+      this.random.nextBytes(asset);
+      final Path file = current.resolve("assets").resolve(String.format("image%s.png", i));
+      Files.createDirectories(file.getParent());
+      Files.write(file, asset);
+    }
+  }
+
+  String markdown(final String title, final String maxVersion) {
+    return BenchmarkData.markdown(title, maxVersion, this.bodyLines);
+  }
+
+  void writeSettings(final Path root) throws IOException {
+    final StringBuilder config = new StringBuilder();
+    config.append("source: ").append(root).append('\n');
+    config.append("target: ").append(root).append("-target\n");
+    config.append(PreprocessorConfig.DOC_VERSIONS).append(":\n");
+    this.versions.forEach(v -> config.append("  - ").append(v).append('\n'));
+    config.append(PreprocessorConfig.GENERATE_REDIRECTS).append(": true\n");
+    config.append(PreprocessorConfig.GENERATE_LATEST).append(": true\n");
+    BenchmarkData.write(root.resolve("config.yml"), config.toString());
+    BenchmarkData.write(root.resolve("mkdocs.yml"),
+        "site_name: Generated site\ntheme:\n  name: material\n  custom_dir: theme_overrides/\n");
+    BenchmarkData.write(root.resolve("theme_overrides/versionredirect.html"),
+        "<meta http-equiv=\"refresh\" content=\"0; URL={{ page.meta.redirect }}\" />\n");
+    BenchmarkData.write(root.resolve("theme_overrides/extra.css"), "body { margin: 0; }\n");
+  }
+
+  void writeLanding(final Path docs) throws IOException {
+    BenchmarkData.write(docs.resolve(PreprocessorConfig.INDEX),
+        "# Generated site\n\n- [Start here](current/section0/topic0/page1.md)\n");
+    BenchmarkData.write(docs.resolve(PreprocessorConfig.PAGES),
+        "nav:\n  - Home: index.md\n  - Docs: current/\n");
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Version resolution of a page and link pruning of a menu
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StructureBenchmark {
+
+  /**
+   * Number of versions to render, every patch release is one
+   */
+  @Param({"10", "30", "120"})
+  public int versionCount;
+
+  Path dir;
+  PageStructure page;
+  MenuStructure menu;
+  Path menuTarget;
+  Map<String, Object> nav;
+
+  @Setup
+  public void setup() throws IOException {
+    this.dir = Files.createTempDirectory("jmh-structure");
+    final List<String> versions = BenchmarkData.versionStrings(this.versionCount);
+    final PreprocessorConfig config = new PreprocessorConfig(this.dir, this.dir.resolve("target"),
+        versions, true, true, WatchMode.NONE);
+
+    // A variant every fifth version, some of them end early
+    final Path folder = config.rootForMarkdownSource().resolve("admin");
+    final Path origin = folder.resolve("install.md");
+    this.page = new PageStructure(origin, config, new DocumentCache(config));
+    BenchmarkData.write(origin, BenchmarkData.markdown("Install", null, 10));
+    this.page.addPath(DocVersion.first(), origin);
+    for (int i = 5; i < versions.size(); i += 5) {
+      final String maxVersion = i % 10 == 0 ? versions.get(i + 1) : null;
+      final Path variant = folder.resolve("install." + versions.get(i) + ".md");
+      BenchmarkData.write(variant, BenchmarkData.markdown("Install", maxVersion, 10));
+      this.page.addPath(DocVersion.fromString(versions.get(i)), variant);
+    }
+
+    // 200 links, every other page was rendered
+    final DependencyGraph rendered = new DependencyGraph();
+    this.menuTarget = config.rootForMarkdownTarget().resolve(versions.get(0)).resolve("admin");
+    final List<Object> entries = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      final String link = "page" + i + ".md";
+      entries.add(i % 3 == 0 ? Map.of("Page " + i, link) : link);
+      if (i % 2 == 0) {
+        rendered.setOutputs(Path.of(link), List.of(this.menuTarget.resolve(link)));
+      }
+    }
+    this.nav = Map.of("nav", entries, "title", "Admin");
+    this.menu = new MenuStructure(folder, config, rendered);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    BenchmarkData.delete(this.dir);
+  }
+
+  @Benchmark
+  public Map<DocVersion, PageVariation> preparePageList() {
+    return this.page.preparePageList(this.page.config.versions, this.page.options);
+  }
+
+  @Benchmark
+  public Map<String, Object> checkThatLinkedPagesExist() {
+    return this.menu.checkThatLinkedPagesExist(this.menuTarget, this.nav);
+  }
+}
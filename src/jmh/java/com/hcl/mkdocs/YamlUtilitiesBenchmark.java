@@ -0,0 +1,109 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Front-matter handling, runs once per page and version
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class YamlUtilitiesBenchmark {
+
+  /**
+   * Markdown lines after the front-matter
+   */
+  @Param({"20", "2000"})
+  public int bodyLines;
+
+  Path dir;
+  Path source;
+  Path target;
+  MarkdownDocument doc;
+  Map<String, Object> yaml;
+
+  @Setup
+  public void setup() throws IOException {
+    this.dir = Files.createTempDirectory("jmh-yaml");
+    this.source = this.dir.resolve("page.md");
+    this.target = this.dir.resolve("out.md");
+    BenchmarkData.write(this.source, BenchmarkData.markdown("Install", null, this.bodyLines));
+    this.doc = MarkdownDocument.read(this.source,
+        Files.readAttributes(this.source, BasicFileAttributes.class));
+    final Set<DocVersion> versions = new TreeSet<>();
+    BenchmarkData.versionStrings(30).forEach(v -> versions.add(DocVersion.fromString(v)));
+    this.yaml = this.doc.copyOfFrontMatter();
+    YamlUtilities.patchYamlWithVersions(versions, versions.iterator().next(), this.yaml);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    BenchmarkData.delete(this.dir);
+  }
+
+  @Benchmark
+  public Map<String, Object> parseYamlFromMarkdown() throws IOException {
+    return YamlUtilities.parseYamlFromMarkdown(this.source);
+  }
+
+  @Benchmark
+  public String generateYamlString() {
+    return YamlUtilities.generateYamlString(this.yaml);
+  }
+
+  @Benchmark
+  public void replaceFrontMatter() throws IOException {
+    try (PrintWriter pw = new PrintWriter(Writer.nullWriter())) {
+      YamlUtilities.replaceFrontMatter(this.source, this.yaml, pw);
+    }
+  }
+
+  /**
+   * What rendering uses instead of replaceFrontMatter, including the write
+   */
+  @Benchmark
+  public long writeMarkdown() throws IOException {
+    return YamlUtilities.writeMarkdown(this.doc, this.yaml, this.target);
+  }
+}
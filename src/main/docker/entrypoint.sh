@@ -21,27 +21,36 @@ export JAVA_HOME=/usr/lib/jvm/java-17-openjdk
 export PATH=$PATH:$JAVA_HOME/bin
 export LD_LIBRARY_PATH=$JAVA_HOME/lib/server
 
+# RENDER_VERSIONS=latest or a comma separated list previews only these versions
+VERSIONS_OPTION=${RENDER_VERSIONS:+--versions=$RENDER_VERSIONS}
+
+# Class data archive from the image build, skips loading SnakeYAML and the preprocessor
+JAVA_CDS=""
+if [ -f /deployments/MkDocsVersions.jsa ]; then
+   JAVA_CDS="-XX:SharedArchiveFile=/deployments/MkDocsVersions.jsa"
+fi
+
 # Handling preprocessor
 runPreprocessor() {
    # build and watch
    if [[ $2 == b* ]]; then
       echo Running buildAndWatch
-      java -jar /deployments/MkDocsVersions.jar $1
-      java -jar /deployments/MkDocsVersions.jar $1 watch &
+      java $JAVA_CDS -jar /deployments/MkDocsVersions.jar $1 $VERSIONS_OPTION
+      java $JAVA_CDS -jar /deployments/MkDocsVersions.jar $1 watch $VERSIONS_OPTION &
       runMkDocs serve $3 $4 $5 $6 $7 $8
    fi
 
    # watch only
    if [[ $2 == w* ]]; then
       echo Running watch only
-      java -jar /deployments/MkDocsVersions.jar $1 watch &
+      java $JAVA_CDS -jar /deployments/MkDocsVersions.jar $1 watch $VERSIONS_OPTION &
       runMkDocs serve $3 $4 $5 $6 $7 $8
    fi
 
    # generate mkdocs after preprocessor run
    if [[ $2 == g* ]]; then
       echo Running build complete
-      java -jar /deployments/MkDocsVersions.jar $1
+      java $JAVA_CDS -jar /deployments/MkDocsVersions.jar $1 $VERSIONS_OPTION
       runMkDocs build $3 $4 $5 $6 $7 $8
       echo build complete
    fi
@@ -49,7 +58,7 @@ runPreprocessor() {
    #only run preprocessor
    if [[ $2 == o* ]]; then
       echo Running build complete
-      java -jar /deployments/MkDocsVersions.jar $1
+      java $JAVA_CDS -jar /deployments/MkDocsVersions.jar $1 $VERSIONS_OPTION
       echo Preprocessor run complete
    fi
 }
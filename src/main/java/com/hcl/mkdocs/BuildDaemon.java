@@ -0,0 +1,244 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Keeps a built site in memory and rebuilds it on request. A connection
+ * carries one command line on a Unix domain socket, the answer ends with
+ * a line starting with ok or error and the time the request took, then
+ * the daemon closes the connection. Every client has its own thread,
+ * requests touching the site run one at a time:
+ * <ul>
+ * <li>build - renders all sources changed since the last build, prunes the content store</li>
+ * <li>build paths a.md,b/c.md - renders these sources, relative to source</li>
+ * <li>status - versions, pages, cached documents and builds so far</li>
+ * <li>stop - ends the daemon</li>
+ * </ul>
+ */
+public class BuildDaemon {
+
+  public static final String SOCKET_FILE = ".mkdocs-daemon.sock";
+  static final String BUILD = "build";
+  static final String PATHS = "paths";
+  static final String STATUS = "status";
+  static final String STOP = "stop";
+
+  final MkDocsPreprocessor processor;
+  final Path socket;
+  final long started = System.nanoTime();
+  /**
+   * Held while a request reads or renders the site
+   */
+  final Object buildLock = new Object();
+  int builds = 0;
+  volatile boolean running = true;
+  volatile ServerSocketChannel server;
+
+  public BuildDaemon(final MkDocsPreprocessor processor) {
+    this.processor = processor;
+    this.socket = processor.config.daemonSocket;
+  }
+
+  /**
+   * Accepts clients until stopped, a client that never sends
+   * its request only blocks its own thread
+   *
+   * @return number of files copied in the first build
+   */
+  public int serve() {
+    // Baseline for detecting changes, the first build just read everything
+    this.processor.registerTree(null, this.processor.config.source, null, null);
+    try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      this.server = server;
+      Files.deleteIfExists(this.socket);
+      server.bind(UnixDomainSocketAddress.of(this.socket));
+      BuildLog.info("Daemon listening on %s%n", this.socket);
+      BuildLog.flush();
+      while (this.running) {
+        final SocketChannel client;
+        try {
+          client = server.accept();
+        } catch (final ClosedChannelException e) {
+          // Closed by stop
+          break;
+        }
+        final Thread worker = new Thread(() -> this.answer(client), "mkdocs-daemon-client");
+        worker.setDaemon(true);
+        worker.start();
+      }
+    } catch (final IOException e) {
+      e.printStackTrace();
+    } finally {
+      try {
+        Files.deleteIfExists(this.socket);
+      } catch (final IOException e) {
+        e.printStackTrace();
+      }
+    }
+    return this.processor.filesCopied.get();
+  }
+
+  void answer(final SocketChannel client) {
+    try (client) {
+      this.handle(client);
+    } catch (final IOException e) {
+      BuildLog.warn("Request failed: %s%n", e.getMessage());
+    }
+    if (!this.running) {
+      try {
+        this.server.close();
+      } catch (final IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Answers the first non blank line, the connection closes afterwards
+   */
+  void handle(final SocketChannel client) throws IOException {
+    final BufferedReader in = new BufferedReader(
+        Channels.newReader(client, StandardCharsets.UTF_8));
+    final PrintWriter out = new PrintWriter(
+        Channels.newWriter(client, StandardCharsets.UTF_8), true);
+    String line = in.readLine();
+    while (line != null && line.isBlank()) {
+      line = in.readLine();
+    }
+    if (line == null) {
+      return;
+    }
+    final long start = System.nanoTime();
+    try {
+      synchronized (this.buildLock) {
+        if (this.running) {
+          this.execute(line.trim(), out);
+        }
+      }
+      out.printf("ok %s ms%n", (System.nanoTime() - start) / 1000000);
+    } catch (final Exception e) {
+      out.printf("error %s %s ms%n", e.getMessage(), (System.nanoTime() - start) / 1000000);
+    }
+    BuildLog.flush();
+  }
+
+  void execute(final String command, final PrintWriter out) {
+    final String[] words = command.split("\\s+", 3);
+    if (BuildDaemon.STOP.equals(words[0])) {
+      this.running = false;
+    } else if (BuildDaemon.STATUS.equals(words[0])) {
+      final SiteStructure site = this.processor.siteStructure;
+      out.printf("versions %s%n", this.processor.config.renderedVersions());
+      out.printf("pages %s%n", site.pages.size());
+      out.printf("menus %s%n", site.menus.size());
+      out.printf("documents %s%n", site.documents.size());
+      out.printf("builds %s%n", this.builds);
+      out.printf("uptime %s s%n", (System.nanoTime() - this.started) / 1000000000L);
+    } else if (BuildDaemon.BUILD.equals(words[0]) && words.length == 1) {
+      this.build(out);
+    } else if (BuildDaemon.BUILD.equals(words[0]) && words.length == 3
+        && BuildDaemon.PATHS.equals(words[1])) {
+      this.build(words[2].split(","), out);
+    } else {
+      throw new IllegalArgumentException("unknown command " + command);
+    }
+  }
+
+  /**
+   * Compares the source tree with the last build, like watch mode after an overflow
+   */
+  void build(final PrintWriter out) {
+    final Set<Path> changed = new LinkedHashSet<>();
+    final Set<Path> seen = new HashSet<>();
+    this.processor.registerTree(null, this.processor.config.source, changed, seen);
+    final Set<Path> deleted = new LinkedHashSet<>();
+    this.processor.knownFiles.keySet().stream()
+        .filter(p -> !seen.contains(p))
+        .forEach(deleted::add);
+    deleted.forEach(this.processor.knownFiles::remove);
+    this.render(changed, deleted, out);
+    if (CopyStrategy.SYMLINK.equals(this.processor.config.copyStrategy)) {
+      try {
+        out.printf("pruned %s%n", this.processor.copier.collectGarbage());
+      } catch (final IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Renders only the named sources, nothing else gets checked
+   */
+  void build(final String[] paths, final PrintWriter out) {
+    final Set<Path> changed = new LinkedHashSet<>();
+    final Set<Path> deleted = new LinkedHashSet<>();
+    for (final String p : paths) {
+      if (p.isBlank()) {
+        continue;
+      }
+      final Path source = this.processor.config.source.resolve(p.trim()).normalize();
+      if (!source.startsWith(this.processor.config.source.normalize())) {
+        throw new IllegalArgumentException(p + " is outside of the source");
+      }
+      if (Files.exists(source)) {
+        this.processor.registerTree(null, source, changed, null);
+        // Named files render even when they look unchanged
+        if (Files.isRegularFile(source)) {
+          changed.add(source);
+        }
+      } else {
+        this.processor.knownFiles.keySet().stream()
+            .filter(known -> known.startsWith(source))
+            .forEach(deleted::add);
+        deleted.forEach(this.processor.knownFiles::remove);
+      }
+    }
+    this.render(changed, deleted, out);
+  }
+
+  /**
+   * @throws IllegalStateException when a source failed to render
+   */
+  void render(final Set<Path> changed, final Set<Path> deleted, final PrintWriter out) {
+    final Set<Path> failed = this.processor.siteStructure.metrics.failed;
+    failed.clear();
+    this.processor.handleChanges(changed, deleted);
+    this.builds++;
+    out.printf("changed %s%n", changed.size());
+    out.printf("deleted %s%n", deleted.size());
+    if (!failed.isEmpty()) {
+      throw new IllegalStateException(String.format("%s source(s) failed to render, first %s",
+          failed.size(), failed.iterator().next()));
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leveled console output written by a background thread. Render threads
+ * only queue the format and arguments, the writer formats them and prints
+ * everything queued with one write. A full queue blocks the caller, so
+ * a slow console slows the build down instead of filling the heap
+ */
+public final class BuildLog {
+
+  /**
+   * One message, or a flush marker when latch is set
+   */
+  static final class Record {
+    final boolean error;
+    final String format;
+    final Object[] args;
+    final CountDownLatch latch;
+
+    Record(final boolean error, final String format, final Object[] args,
+        final CountDownLatch latch) {
+      this.error = error;
+      this.format = format;
+      this.args = args;
+      this.latch = latch;
+    }
+  }
+
+  static final int QUEUE_SIZE = 16384;
+  /**
+   * Characters collected before printing while the queue doesn't run empty
+   */
+  static final int BUFFER_SIZE = 65536;
+  static final BlockingQueue<Record> QUEUE = new ArrayBlockingQueue<>(BuildLog.QUEUE_SIZE);
+  static volatile LogLevel level = LogLevel.SUMMARY;
+  static Thread writer = null;
+
+  /**
+   * @param newLevel LogLevel for all following messages
+   */
+  public static void setLevel(final LogLevel newLevel) {
+    BuildLog.level = newLevel;
+  }
+
+  /**
+   * @param messageLevel LogLevel of a message
+   * @return true when the message would be printed, lets callers skip expensive arguments
+   */
+  public static boolean isEnabled(final LogLevel messageLevel) {
+    return BuildLog.level.includes(messageLevel);
+  }
+
+  /**
+   * Per file message, e.g. a copy or a rendered page
+   *
+   * @param format String.format pattern, ends with %n
+   * @param args arguments, formatted on the writer thread
+   */
+  public static void file(final String format, final Object... args) {
+    if (BuildLog.isEnabled(LogLevel.FILES)) {
+      BuildLog.enqueue(new Record(false, format, args, null));
+    }
+  }
+
+  /**
+   * Summary of a build or batch of changes
+   *
+   * @param format String.format pattern, ends with %n
+   * @param args arguments, formatted on the writer thread
+   */
+  public static void info(final String format, final Object... args) {
+    if (BuildLog.isEnabled(LogLevel.SUMMARY)) {
+      BuildLog.enqueue(new Record(false, format, args, null));
+    }
+  }
+
+  /**
+   * Printed to System.err at every level
+   *
+   * @param format String.format pattern, ends with %n
+   * @param args arguments, formatted on the writer thread
+   */
+  public static void warn(final String format, final Object... args) {
+    BuildLog.enqueue(new Record(true, format, args, null));
+  }
+
+  /**
+   * Waits until everything queued so far is printed
+   */
+  public static void flush() {
+    final CountDownLatch latch = new CountDownLatch(1);
+    BuildLog.enqueue(new Record(false, null, null, latch));
+    try {
+      if (!latch.await(1, TimeUnit.MINUTES)) {
+        System.err.println("Log writer doesn't respond");
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  static void enqueue(final Record record) {
+    BuildLog.startWriter();
+    try {
+      BuildLog.QUEUE.put(record);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  static synchronized void startWriter() {
+    if (BuildLog.writer == null) {
+      BuildLog.writer = new Thread(BuildLog::writeLoop, "build-log");
+      BuildLog.writer.setDaemon(true);
+      BuildLog.writer.start();
+    }
+  }
+
+  static void writeLoop() {
+    final StringBuilder out = new StringBuilder();
+    final StringBuilder err = new StringBuilder();
+    while (true) {
+      try {
+        Record r = BuildLog.QUEUE.take();
+        while (r != null) {
+          if (r.latch != null) {
+            // Everything before the marker gets printed first
+            BuildLog.print(out, err);
+            r.latch.countDown();
+          } else {
+            BuildLog.append(r.error ? err : out, r);
+          }
+          if (out.length() + err.length() > BuildLog.BUFFER_SIZE) {
+            BuildLog.print(out, err);
+          }
+          r = BuildLog.QUEUE.poll();
+        }
+        BuildLog.print(out, err);
+      } catch (final InterruptedException e) {
+        // Daemon thread, lives as long as the JVM
+      }
+    }
+  }
+
+  static void append(final StringBuilder b, final Record r) {
+    try {
+      b.append(String.format(r.format, r.args));
+    } catch (final RuntimeException e) {
+      b.append(r.format).append(System.lineSeparator());
+    }
+  }
+
+  static void print(final StringBuilder out, final StringBuilder err) {
+    if (out.length() > 0) {
+      System.out.print(out);
+      System.out.flush();
+      out.setLength(0);
+    }
+    if (err.length() > 0) {
+      System.err.print(err);
+      System.err.flush();
+      err.setLength(0);
+    }
+  }
+
+  private BuildLog() {
+    // Only static methods here
+  }
+}
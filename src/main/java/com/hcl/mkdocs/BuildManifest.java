@@ -0,0 +1,245 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Persistent record of the source files used in the last build,
+ * stored in the target directory. Allows an incremental build to
+ * skip pages, menus and copies whose sources didn't change
+ */
+public class BuildManifest {
+
+  /**
+   * Size, modification time and content hash of a source file
+   */
+  static final class FileState {
+    final long size;
+    final long modified;
+    final String hash;
+
+    FileState(final long size, final long modified, final String hash) {
+      this.size = size;
+      this.modified = modified;
+      this.hash = hash;
+    }
+
+    boolean sameStat(final long size, final long modified) {
+      return this.size == size && this.modified == modified;
+    }
+
+    List<Object> toList() {
+      return List.of(this.size, this.modified, this.hash);
+    }
+
+    static FileState fromList(final Object o) {
+      if (o instanceof List && ((List<?>) o).size() == 3) {
+        final List<?> values = (List<?>) o;
+        return new FileState(Long.parseLong(String.valueOf(values.get(0))),
+            Long.parseLong(String.valueOf(values.get(1))), String.valueOf(values.get(2)));
+      }
+      return null;
+    }
+  }
+
+  public static final String MANIFEST_FILE = ".mkdocs-build-state.yml";
+  static final String FINGERPRINT = "fingerprint";
+  static final String FILES = "files";
+
+  static String hash(final Path file) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+      final StringBuilder b = new StringBuilder();
+      for (final byte x : digest.digest()) {
+        b.append(String.format("%02x", x));
+      }
+      return b.toString();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  final PreprocessorConfig config;
+  final Path manifestFile;
+  final Map<String, FileState> previous = new HashMap<>();
+  final Map<String, FileState> current = new ConcurrentHashMap<>();
+  boolean enabled = false;
+  /**
+   * Attributes collected while scanning the sources
+   */
+  SourceSnapshot snapshot = SourceSnapshot.EMPTY;
+
+  public BuildManifest(final PreprocessorConfig config) {
+    this.config = config;
+    this.manifestFile = config.target.resolve(BuildManifest.MANIFEST_FILE);
+  }
+
+  /**
+   * Reads the manifest of the previous build. When the fingerprint of
+   * versions and flags differs, nothing is considered unchanged
+   */
+  public void load() {
+    this.enabled = this.config.incremental;
+    this.previous.clear();
+    this.current.clear();
+    if (!this.enabled || !this.manifestFile.toFile().exists()) {
+      return;
+    }
+    try {
+      // Large sites exceed the default document size limit
+      final LoaderOptions options = new LoaderOptions();
+      options.setCodePointLimit(Integer.MAX_VALUE);
+      final Map<String, Object> yaml =
+          new Yaml(options).load(Files.readString(this.manifestFile, StandardCharsets.UTF_8));
+      final String fingerprint =
+          yaml == null ? null : String.valueOf(yaml.get(BuildManifest.FINGERPRINT));
+      if (!this.config.fingerprint().equals(fingerprint)) {
+        BuildLog.info("Build configuration changed, running full build%n");
+        return;
+      }
+      final Object files = yaml.get(BuildManifest.FILES);
+      if (files instanceof Map) {
+        ((Map<?, ?>) files).forEach((k, v) -> {
+          final FileState state = FileState.fromList(v);
+          if (state != null) {
+            this.previous.put(String.valueOf(k), state);
+          }
+        });
+      }
+    } catch (final Exception e) {
+      BuildLog.warn("Ignoring unreadable %s: %s%n", this.manifestFile, e.getMessage());
+      this.previous.clear();
+    }
+  }
+
+  /**
+   * Checks a source file against the previous build and records
+   * its current state. The content hash is only computed when
+   * size or modification time differ
+   *
+   * @param source Path of the source file
+   * @return true when the file is identical to the previous build
+   */
+  public boolean isUnchanged(final Path source) {
+    if (!this.enabled) {
+      return false;
+    }
+    final String key = this.keyFor(source);
+    try {
+      final BasicFileAttributes attr = this.snapshot.attributes(source);
+      final long size = attr.size();
+      final long modified = attr.lastModifiedTime().toMillis();
+      final FileState old = this.previous.get(key);
+      final FileState now = old != null && old.sameStat(size, modified)
+          ? old
+          : new FileState(size, modified, BuildManifest.hash(source));
+      this.current.put(key, now);
+      return old != null && old.hash.equals(now.hash);
+    } catch (final IOException e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+  /**
+   * Checks all sources, each one gets recorded
+   *
+   * @param sources Collection of source paths
+   * @return true when none of them changed
+   */
+  public boolean allUnchanged(final Collection<Path> sources) {
+    boolean result = true;
+    for (final Path p : sources) {
+      result = this.isUnchanged(p) && result;
+    }
+    return result;
+  }
+
+  /**
+   * Sources of the previous build that were not seen in this one
+   *
+   * @return Set of source paths
+   */
+  public Set<Path> removedSources() {
+    final Set<Path> result = new HashSet<>();
+    if (this.enabled) {
+      this.previous.keySet().stream()
+          .filter(k -> !this.current.containsKey(k))
+          .forEach(k -> result.add(this.config.source.resolve(k)));
+    }
+    return result;
+  }
+
+  /**
+   * Drops the recorded state of sources whose outputs weren't written,
+   * the next build sees them as changed
+   *
+   * @param sources Collection of source paths
+   */
+  public void forget(final Collection<Path> sources) {
+    sources.forEach(p -> this.current.remove(this.keyFor(p)));
+  }
+
+  /**
+   * Writes the states recorded in this build
+   */
+  public void save() {
+    if (!this.enabled) {
+      return;
+    }
+    final Map<String, Object> files = new TreeMap<>();
+    this.current.forEach((k, v) -> files.put(k, v.toList()));
+    final Map<String, Object> yaml = new HashMap<>();
+    yaml.put(BuildManifest.FINGERPRINT, this.config.fingerprint());
+    yaml.put(BuildManifest.FILES, files);
+    try {
+      Files.createDirectories(this.manifestFile.getParent());
+    } catch (final IOException e) {
+      e.printStackTrace();
+      return;
+    }
+    YamlUtilities.saveYaml(this.manifestFile, yaml);
+  }
+
+  String keyFor(final Path source) {
+    return this.config.source.relativize(source).toString();
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wall time per phase, bytes and files of one build, written as JSON
+ * into the target directory. Tells which part of a slower build
+ * is responsible. Counters are safe to update from render threads
+ */
+public class BuildMetrics {
+
+  /**
+   * Time spent on one source file
+   */
+  static final class SourceTime {
+    final Path source;
+    final long nanos;
+
+    SourceTime(final Path source, final long nanos) {
+      this.source = source;
+      this.nanos = nanos;
+    }
+  }
+
+  public static final String METRICS_FILE = ".mkdocs-build-metrics.json";
+
+  public static final String TREE_WALK = "tree_walk";
+  public static final String EXTRA_DIRS = "extra_dirs";
+  public static final String PAGE_VARIATIONS = "page_variations";
+  public static final String ASSET_COPY = "asset_copy";
+  public static final String CHANGE_DETECTION = "change_detection";
+  public static final String PAGE_RENDER = "page_render";
+  public static final String MENU_RENDER = "menu_render";
+  public static final String LANDING = "landing";
+  public static final String MANIFEST = "manifest";
+  public static final String PRUNE = "prune";
+  public static final String ALIASES = "aliases";
+  public static final String SITES = "sites";
+
+  static String millis(final long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+
+  static String quote(final String s) {
+    final StringBuilder b = new StringBuilder("\"");
+    for (final char c : s.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        b.append('\\').append(c);
+      } else if (c < 0x20) {
+        b.append(String.format("\\u%04x", (int) c));
+      } else {
+        b.append(c);
+      }
+    }
+    return b.append('"').toString();
+  }
+
+  final PreprocessorConfig config;
+  int top = 0;
+  final Map<String, Long> phases = new LinkedHashMap<>();
+  final AtomicLong bytesRead = new AtomicLong();
+  final AtomicLong bytesWritten = new AtomicLong();
+  final Map<String, AtomicLong> sources = new ConcurrentHashMap<>();
+  final Map<String, AtomicLong> outputs = new ConcurrentHashMap<>();
+  /**
+   * The slowest sources, the fastest of them first
+   */
+  final PriorityQueue<SourceTime> slowest =
+      new PriorityQueue<>(Comparator.comparingLong(s -> s.nanos));
+  long started;
+  long finished;
+  long yamlParses;
+  long yamlDumps;
+  /**
+   * Sources whose outputs could not be written
+   */
+  final Set<Path> failed = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param config PreprocessorConfig with the number of slowest sources to report
+   */
+  public BuildMetrics(final PreprocessorConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * Clears all counters and starts the wall clock
+   */
+  public synchronized void start() {
+    this.phases.clear();
+    this.bytesRead.set(0);
+    this.bytesWritten.set(0);
+    this.sources.clear();
+    this.outputs.clear();
+    this.slowest.clear();
+    this.failed.clear();
+    this.top = this.config.metricsTop;
+    // Watch batches and daemon requests in between don't count
+    YamlUtilities.PARSE_CALLS.set(0);
+    YamlUtilities.DUMP_CALLS.set(0);
+    ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    this.started = System.nanoTime();
+    this.finished = 0;
+  }
+
+  /**
+   * Stops the wall clock and the YAML counters
+   */
+  public synchronized void finish() {
+    this.finished = System.nanoTime();
+    this.yamlParses = YamlUtilities.PARSE_CALLS.get();
+    this.yamlDumps = YamlUtilities.DUMP_CALLS.get();
+  }
+
+  /**
+   * Adds the time since start to a phase, phases running more than once add up
+   *
+   * @param name of the phase
+   * @param start System.nanoTime() when the phase started
+   */
+  public synchronized void phase(final String name, final long start) {
+    this.phases.merge(name, System.nanoTime() - start, Long::sum);
+  }
+
+  /**
+   * Records the time spent on one source
+   *
+   * @param source Path of the source, the version free path for pages
+   * @param start System.nanoTime() when work on the source started
+   */
+  public void source(final Path source, final long start) {
+    final SourceTime time = new SourceTime(source, System.nanoTime() - start);
+    synchronized (this.slowest) {
+      if (this.slowest.size() < this.top) {
+        this.slowest.add(time);
+      } else if (this.top > 0 && this.slowest.peek().nanos < time.nanos) {
+        this.slowest.poll();
+        this.slowest.add(time);
+      }
+    }
+  }
+
+  /**
+   * @param source Path of a source that failed to render or copy
+   */
+  public void failed(final Path source) {
+    this.failed.add(source);
+  }
+
+  public void read(final long bytes) {
+    this.bytesRead.addAndGet(bytes);
+  }
+
+  public void written(final long bytes) {
+    this.bytesWritten.addAndGet(bytes);
+  }
+
+  /**
+   * @param kind SourceSnapshot.Kind of a scanned source
+   */
+  public void countSource(final SourceSnapshot.Kind kind) {
+    this.sources.computeIfAbsent(kind.name().toLowerCase(Locale.ROOT), k -> new AtomicLong())
+        .incrementAndGet();
+  }
+
+  /**
+   * @param category of a written file, e.g. markdown, redirect, menu, copy
+   */
+  public void countOutput(final String category) {
+    this.outputs.computeIfAbsent(category, k -> new AtomicLong()).incrementAndGet();
+  }
+
+  /**
+   * Sum of the peak usage of all heap pools since start
+   *
+   * @return bytes
+   */
+  static long peakHeap() {
+    return ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> MemoryType.HEAP.equals(pool.getType()))
+        .mapToLong(pool -> pool.getPeakUsage().getUsed())
+        .sum();
+  }
+
+  List<SourceTime> slowestFirst() {
+    synchronized (this.slowest) {
+      final List<SourceTime> result = new ArrayList<>(this.slowest);
+      result.sort(Comparator.comparingLong((SourceTime s) -> s.nanos).reversed());
+      return result;
+    }
+  }
+
+  static String counters(final Map<String, AtomicLong> values) {
+    final List<String> result = new ArrayList<>();
+    new TreeMap<>(values)
+        .forEach((k, v) -> result.add(String.format("%s: %s", BuildMetrics.quote(k), v.get())));
+    return "{" + String.join(", ", result) + "}";
+  }
+
+  /**
+   * @return the metrics as JSON object, times in milliseconds
+   */
+  public synchronized String toJson() {
+    final String nl = System.lineSeparator();
+    final List<String> phaseTimes = new ArrayList<>();
+    this.phases.forEach((k, v) -> phaseTimes
+        .add(String.format("    %s: %s", BuildMetrics.quote(k), BuildMetrics.millis(v))));
+    final List<String> slow = new ArrayList<>();
+    this.slowestFirst().forEach(s -> slow.add(String.format("    {\"source\": %s, \"ms\": %s}",
+        BuildMetrics.quote(s.source.toString()), BuildMetrics.millis(s.nanos))));
+    final long end = this.finished == 0 ? System.nanoTime() : this.finished;
+    return "{" + nl
+        + "  \"wall_time_ms\": " + BuildMetrics.millis(end - this.started) + "," + nl
+        + "  \"phases_ms\": {" + nl + String.join("," + nl, phaseTimes) + nl + "  }," + nl
+        + "  \"bytes_read\": " + this.bytesRead.get() + "," + nl
+        + "  \"bytes_written\": " + this.bytesWritten.get() + "," + nl
+        + "  \"sources\": " + BuildMetrics.counters(this.sources) + "," + nl
+        + "  \"outputs\": " + BuildMetrics.counters(this.outputs) + "," + nl
+        + "  \"yaml_parse_calls\": " + this.yamlParses + "," + nl
+        + "  \"yaml_dump_calls\": " + this.yamlDumps + "," + nl
+        + "  \"peak_heap_bytes\": " + BuildMetrics.peakHeap() + "," + nl
+        + "  \"slowest_sources\": [" + nl + String.join("," + nl, slow) + nl + "  ]" + nl
+        + "}" + nl;
+  }
+
+  /**
+   * @param destination Path of the JSON file, missing directories get created
+   */
+  public void save(final Path destination) {
+    try {
+      Files.createDirectories(destination.toAbsolutePath().getParent());
+      Files.writeString(destination, this.toJson(), StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+      BuildLog.info("Build metrics written to %s%n", destination);
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+}
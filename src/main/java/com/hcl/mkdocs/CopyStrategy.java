@@ -0,0 +1,65 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+/**
+ * How files that need no processing get into the target directory
+ */
+public enum CopyStrategy {
+
+  /**
+   * Full copy of the file
+   */
+  COPY,
+
+  /**
+   * Hard link to the source file
+   */
+  HARDLINK,
+
+  /**
+   * Copy-on-write clone where the file system supports it
+   */
+  REFLINK,
+
+  /**
+   * Symbolic link to a single copy in a content addressed store
+   */
+  SYMLINK;
+
+  /**
+   * Get the copy strategy from the incoming string,
+   * anything unknown results in a regular copy
+   *
+   * @param incoming String to check
+   * @return CopyStrategy
+   */
+  public static CopyStrategy get(final String incoming) {
+    final String incomingLower = String.valueOf(incoming).toLowerCase();
+    if (incomingLower.startsWith("h")) {
+      return HARDLINK;
+    }
+    if (incomingLower.startsWith("r")) {
+      return REFLINK;
+    }
+    if (incomingLower.startsWith("s")) {
+      return SYMLINK;
+    }
+    return COPY;
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers which outputs every source produced and which menus
+ * link to which output. After a change only menus linking to an
+ * output that appeared or disappeared need to render again.
+ * Menus check their links here instead of on disk
+ */
+public class DependencyGraph {
+
+  final Map<Path, Set<Path>> outputsBySource = new HashMap<>();
+  final Map<Path, Set<MenuStructure>> menusByLink = new HashMap<>();
+  final Map<MenuStructure, Set<Path>> linksByMenu = new HashMap<>();
+  /**
+   * Number of outputs at or below a path, a directory link only
+   * changes when the first output appears or the last one goes
+   */
+  final Map<Path, Integer> rendered = new HashMap<>();
+  /**
+   * Set once a build recorded every output. Before, e.g. in watch
+   * only mode, outputs of earlier runs are only known on disk
+   */
+  boolean complete = false;
+
+  /**
+   * Records the outputs of a source
+   *
+   * @param source Path of the source, the version free path for pages
+   * @param outputs Collection of written target files
+   * @return outputs and directories that were added or are no longer produced
+   */
+  public synchronized Set<Path> setOutputs(final Path source, final Collection<Path> outputs) {
+    final Set<Path> now = new HashSet<>();
+    outputs.forEach(p -> now.add(p.normalize()));
+    final Set<Path> before = now.isEmpty()
+        ? this.outputsBySource.remove(source)
+        : this.outputsBySource.put(source, now);
+    final Set<Path> result = new HashSet<>();
+    now.stream()
+        .filter(p -> before == null || !before.contains(p))
+        .forEach(p -> this.count(p, 1, result));
+    if (before != null) {
+      before.stream()
+          .filter(p -> !now.contains(p))
+          .forEach(p -> this.count(p, -1, result));
+    }
+    return result;
+  }
+
+  void count(final Path output, final int delta, final Set<Path> changed) {
+    for (Path p = output; p != null; p = p.getParent()) {
+      final int below = this.rendered.getOrDefault(p, 0) + delta;
+      if (below > 0) {
+        this.rendered.put(p, below);
+      } else {
+        this.rendered.remove(p);
+      }
+      if (below == 0 || (below == 1 && delta > 0)) {
+        changed.add(p);
+      }
+    }
+  }
+
+  /**
+   * @param target Path of a file or directory in the target
+   * @return true when an output is at or below the path
+   */
+  public synchronized boolean exists(final Path target) {
+    final Path normalized = target.normalize();
+    return this.rendered.containsKey(normalized)
+        || !this.complete && Files.exists(normalized);
+  }
+
+  public synchronized void setComplete(final boolean complete) {
+    this.complete = complete;
+  }
+
+  /**
+   * @param source Path of the source
+   * @return outputs written for the source at the last render
+   */
+  public synchronized Set<Path> outputsOf(final Path source) {
+    return this.outputsBySource.getOrDefault(source, Collections.emptySet());
+  }
+
+  /**
+   * Replaces the links a menu checked on its last render
+   *
+   * @param menu MenuStructure
+   * @param links Collection of target paths
+   */
+  public synchronized void setLinks(final MenuStructure menu, final Collection<Path> links) {
+    final Set<Path> before = this.linksByMenu.put(menu, new HashSet<>(links));
+    if (before != null) {
+      before.forEach(p -> {
+        final Set<MenuStructure> linking = this.menusByLink.get(p);
+        if (linking != null) {
+          linking.remove(menu);
+        }
+      });
+    }
+    links.forEach(p -> this.menusByLink.computeIfAbsent(p, k -> new HashSet<>()).add(menu));
+  }
+
+  /**
+   * @param changedOutputs outputs and directories that appeared or disappeared
+   * @return Set of menus linking to one of them
+   */
+  public synchronized Set<MenuStructure> menusAffectedBy(final Collection<Path> changedOutputs) {
+    final Set<MenuStructure> result = new LinkedHashSet<>();
+    changedOutputs.forEach(
+        p -> result.addAll(this.menusByLink.getOrDefault(p, Collections.emptySet())));
+    return result;
+  }
+}
@@ -17,46 +17,103 @@
 package com.hcl.mkdocs;
 
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * A version like v3.2.0.1. The four parts are packed into one long
+ * that sorts like the version, so comparing needs no allocation.
+ * Parts too large for their bits, e.g. date-like versions, saturate
+ * the key and equal keys then compare part by part.
+ * Parsed versions are cached
+ */
 public class DocVersion implements Comparable<DocVersion> {
 
   public static final String PREFIX = "v";
   public static final String SEPARATOR = ".";
   public static final String SPLITTER = "\\.";
 
+  /**
+   * Bits per part, major first. A part is stored plus one, so
+   * a missing part (-1) sorts first and Integer.MAX_VALUE, used by
+   * last(), is stored as all bits set
+   */
+  static final int[] BITS = {31, 11, 11, 10};
+
+  /**
+   * Entries kept in PARSED, the cache starts over when it is full
+   */
+  static final int PARSED_LIMIT = 4096;
+
+  static final Map<String, DocVersion> PARSED = new ConcurrentHashMap<>();
+
+  static final DocVersion FIRST = new DocVersion(1);
+
+  static final DocVersion LAST = new DocVersion(Integer.MAX_VALUE, Integer.MAX_VALUE,
+      Integer.MAX_VALUE, Integer.MAX_VALUE);
+
   /**
    * Convenience function to get v1
    *
    * @return DocVersion v1
    */
   public static DocVersion first() {
-    return new DocVersion(1);
+    return DocVersion.FIRST;
   }
 
   public static DocVersion fromPath(final Path path) {
-    return DocVersion.fromPath(path, DocVersion.first().toString());
+    return DocVersion.fromPath(path, DocVersion.FIRST.toString());
   }
 
+  /**
+   * Finds the version in a file name like index.v2.1.md,
+   * the first ".v" followed by a digit starts it
+   *
+   * @param path Path of the file
+   * @param fallback version when the name has none
+   * @return DocVersion
+   */
   public static DocVersion fromPath(final Path path, final String fallback) {
     final String fileName = path.getFileName().toString();
-    if (!fileName.contains(".v")) {
-      return DocVersion.fromString(fallback);
+    final int extension = fileName.lastIndexOf('.');
+    final int end = extension < 0 ? fileName.length() : extension;
+    for (int i = 0; i + 2 < end; i++) {
+      if (fileName.charAt(i) == '.' && fileName.charAt(i + 1) == 'v'
+          && Character.isDigit(fileName.charAt(i + 2))) {
+        final int next = fileName.indexOf(".v", i + 2);
+        return DocVersion.fromString(
+            fileName.substring(i + 2, next < 0 || next > end ? end : next));
+      }
     }
-    final String fileNoextension = fileName.substring(0, fileName.lastIndexOf("."));
-    final String[] split = fileNoextension.split(DocVersion.SPLITTER + DocVersion.PREFIX);
-    final String candidate = split.length > 1 ? split[1] : fallback;
-    return DocVersion.fromString(candidate);
+    return DocVersion.fromString(fallback);
   }
 
+  /**
+   * @param incoming version like v1.2 or 1.2
+   * @return canonical DocVersion
+   * @throws NumberFormatException when a part isn't a number
+   */
   public static DocVersion fromString(final String incoming) {
-    final String[] actual =
-        (incoming.startsWith(DocVersion.PREFIX) ? incoming.substring(1) : incoming)
-            .split(DocVersion.SPLITTER);
-    final int major = Integer.parseInt(actual[0]);
-    final int minor = actual.length > 1 ? Integer.parseInt(actual[1]) : -1;
-    final int patch = actual.length > 2 ? Integer.parseInt(actual[2]) : -1;
-    final int subpatch = actual.length > 3 ? Integer.parseInt(actual[3]) : -1;
-    return new DocVersion(major, minor, patch, subpatch);
+    final DocVersion cached = DocVersion.PARSED.get(incoming);
+    if (cached != null) {
+      return cached;
+    }
+    final int[] parts = {-1, -1, -1, -1};
+    int start = incoming.startsWith(DocVersion.PREFIX) ? 1 : 0;
+    for (int i = 0; i < parts.length && (i == 0 || start < incoming.length()); i++) {
+      int end = incoming.indexOf('.', start);
+      if (end < 0) {
+        end = incoming.length();
+      }
+      parts[i] = Integer.parseInt(incoming, start, end, 10);
+      start = end + 1;
+    }
+    final DocVersion result = new DocVersion(parts[0], parts[1], parts[2], parts[3]);
+    if (DocVersion.PARSED.size() >= DocVersion.PARSED_LIMIT) {
+      DocVersion.PARSED.clear();
+    }
+    final DocVersion previous = DocVersion.PARSED.putIfAbsent(incoming, result);
+    return previous == null ? result : previous;
   }
 
   /**
@@ -65,34 +122,71 @@ public class DocVersion implements Comparable<DocVersion> {
    * @return DocVersion last
    */
   public static DocVersion last() {
-    return new DocVersion(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
-        Integer.MAX_VALUE);
+    return DocVersion.LAST;
+  }
+
+  /**
+   * A part out of range saturates: too small stores zero, too large stores
+   * one below all bits set, and every later part then stores the same
+   * extreme. Keys of different versions may tie but never contradict
+   * their order
+   */
+  static long pack(final int major, final int minor, final int patch, final int subpatch) {
+    final int[] parts = {major, minor, patch, subpatch};
+    long result = 0;
+    long fill = -1;
+    for (int i = 0; i < parts.length; i++) {
+      final long allSet = (1L << DocVersion.BITS[i]) - 1;
+      long stored = parts[i] == Integer.MAX_VALUE ? allSet : parts[i] + 1L;
+      if (fill >= 0) {
+        stored = fill;
+      } else if (stored < 0) {
+        stored = 0;
+        fill = 0;
+      } else if (stored >= allSet && parts[i] != Integer.MAX_VALUE) {
+        stored = allSet - 1;
+        fill = Long.MAX_VALUE;
+      }
+      result = (result << DocVersion.BITS[i]) | Math.min(stored, allSet);
+    }
+    return result;
+  }
+
+  static boolean fits(final int major, final int minor, final int patch, final int subpatch) {
+    final int[] parts = {major, minor, patch, subpatch};
+    for (int i = 0; i < parts.length; i++) {
+      final long allSet = (1L << DocVersion.BITS[i]) - 1;
+      if (parts[i] < -1 || parts[i] != Integer.MAX_VALUE && parts[i] + 1L >= allSet) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public final int major;
   public final int minor;
   public final int patch;
   public final int subpatch;
+  /**
+   * The four parts, sorting like the version
+   */
+  public final long key;
+  /**
+   * False when a part saturated the key
+   */
+  public final boolean exact;
+  private String text;
 
   public DocVersion(final int major) {
-    this.major = major;
-    this.minor = -1;
-    this.patch = -1;
-    this.subpatch = -1;
+    this(major, -1, -1, -1);
   }
 
   public DocVersion(final int major, final int minor) {
-    this.major = major;
-    this.minor = minor;
-    this.patch = -1;
-    this.subpatch = -1;
+    this(major, minor, -1, -1);
   }
 
   public DocVersion(final int major, final int minor, final int patch) {
-    this.major = major;
-    this.minor = minor;
-    this.patch = patch;
-    this.subpatch = -1;
+    this(major, minor, patch, -1);
   }
 
   public DocVersion(final int major, final int minor, final int patch, final int subpatch) {
@@ -100,6 +194,8 @@ public class DocVersion implements Comparable<DocVersion> {
     this.minor = minor;
     this.patch = patch;
     this.subpatch = subpatch;
+    this.key = DocVersion.pack(major, minor, patch, subpatch);
+    this.exact = DocVersion.fits(major, minor, patch, subpatch);
   }
 
   /**
@@ -108,57 +204,57 @@ public class DocVersion implements Comparable<DocVersion> {
    */
   @Override
   public int compareTo(final DocVersion incoming) {
-    if (this.major == incoming.major && this.minor == incoming.minor
-        && this.patch == incoming.patch) {
-      return Integer.compare(this.subpatch, incoming.subpatch);
+    if (this.key != incoming.key || this.exact && incoming.exact) {
+      return Long.compare(this.key, incoming.key);
     }
-
-    if (this.major == incoming.major && this.minor == incoming.minor) {
-      return Integer.compare(this.patch, incoming.patch);
+    int result = Integer.compare(this.major, incoming.major);
+    if (result == 0) {
+      result = Integer.compare(this.minor, incoming.minor);
     }
-
-    if (this.major == incoming.major) {
-      return Integer.compare(this.minor, incoming.minor);
+    if (result == 0) {
+      result = Integer.compare(this.patch, incoming.patch);
     }
-
-    return Integer.compare(this.major, incoming.major);
+    if (result == 0) {
+      result = Integer.compare(this.subpatch, incoming.subpatch);
+    }
+    return result;
   }
 
   @Override
   public boolean equals(final Object obj) {
-    if (obj instanceof DocVersion) {
-      return this.toString().equals(obj.toString());
-    }
-    return false;
+    return obj instanceof DocVersion && this.compareTo((DocVersion) obj) == 0;
   }
 
   @Override
   public int hashCode() {
-
-    return this.major * 1000000 + this.minor * 10000 + this.patch * 100 + this.subpatch;
+    return Long.hashCode(this.key);
   }
 
   @Override
   public String toString() {
-    final StringBuilder builder = new StringBuilder();
-    builder.append(DocVersion.PREFIX);
-    builder.append(this.major);
-    if (this.minor >= 0) {
-      builder.append(DocVersion.SEPARATOR);
-      builder.append(this.minor);
-    }
+    String result = this.text;
+    if (result == null) {
+      final StringBuilder builder = new StringBuilder();
+      builder.append(DocVersion.PREFIX);
+      builder.append(this.major);
+      if (this.minor >= 0) {
+        builder.append(DocVersion.SEPARATOR);
+        builder.append(this.minor);
+      }
 
-    if (this.patch >= 0) {
-      builder.append(DocVersion.SEPARATOR);
-      builder.append(this.patch);
-    }
+      if (this.patch >= 0) {
+        builder.append(DocVersion.SEPARATOR);
+        builder.append(this.patch);
+      }
 
-    if (this.subpatch >= 0) {
-      builder.append(DocVersion.SEPARATOR);
-      builder.append(this.subpatch);
+      if (this.subpatch >= 0) {
+        builder.append(DocVersion.SEPARATOR);
+        builder.append(this.subpatch);
+      }
+      result = builder.toString();
+      this.text = result;
     }
-
-    return builder.toString();
+    return result;
   }
 
 }
@@ -0,0 +1,110 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps parsed markdown sources, so every version renders from one read.
+ * In watch mode the cache is bounded and checks the file before reuse
+ */
+public class DocumentCache {
+
+  final int capacity;
+  final boolean validate;
+  final Map<Path, MarkdownDocument> documents;
+  final BuildMetrics metrics;
+  /**
+   * Attributes collected while scanning the sources
+   */
+  SourceSnapshot snapshot = SourceSnapshot.EMPTY;
+
+  /**
+   * @param config PreprocessorConfig, watch mode limits the size
+   */
+  public DocumentCache(final PreprocessorConfig config) {
+    this(config, new BuildMetrics(config));
+  }
+
+  /**
+   * @param config PreprocessorConfig, watch mode limits the size
+   * @param metrics BuildMetrics counting the bytes read
+   */
+  public DocumentCache(final PreprocessorConfig config, final BuildMetrics metrics) {
+    this.metrics = metrics;
+    this.validate = !WatchMode.NONE.equals(config.watchMode);
+    this.capacity = this.validate ? config.documentCacheSize : Integer.MAX_VALUE;
+    this.documents = new LinkedHashMap<>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Path, MarkdownDocument> eldest) {
+        return this.size() > DocumentCache.this.capacity;
+      }
+    };
+  }
+
+  /**
+   * Removes a document, e.g. when the watcher reports a change
+   *
+   * @param source Path of the markdown file
+   */
+  public synchronized void evict(final Path source) {
+    this.documents.remove(source);
+  }
+
+  /**
+   * Returns the parsed document, reading it only when
+   * not cached or changed on disk. Stat and read run outside
+   * the lock, a document read meanwhile is only replaced by a newer one
+   *
+   * @param source Path of the markdown file
+   * @return MarkdownDocument
+   * @throws IOException when reading fails
+   */
+  public MarkdownDocument get(final Path source) throws IOException {
+    final MarkdownDocument cached;
+    synchronized (this) {
+      cached = this.documents.get(source);
+    }
+    if (cached != null && !this.validate) {
+      return cached;
+    }
+    final BasicFileAttributes attr = this.snapshot.attributes(source);
+    if (cached != null && cached.isCurrent(attr)) {
+      return cached;
+    }
+    final MarkdownDocument result = MarkdownDocument.read(source, attr);
+    this.metrics.read(result.bodyOffset);
+    synchronized (this) {
+      final MarkdownDocument other = this.documents.get(source);
+      if (other != null && other.modified > result.modified) {
+        return other;
+      }
+      this.documents.put(source, result);
+    }
+    return result;
+  }
+
+  public synchronized int size() {
+    return this.documents.size();
+  }
+}
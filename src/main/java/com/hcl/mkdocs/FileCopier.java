@@ -0,0 +1,289 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Puts 1:1 files into the target using the configured CopyStrategy.
+ * When linking or cloning fails it falls back to a regular copy. Only
+ * failures that repeat for every file, e.g. source and target on
+ * different file systems, skip linking for the rest of the build
+ */
+public class FileCopier {
+
+  /**
+   * Directory in the target holding one copy per content hash
+   */
+  public static final String STORE_PATH = ".content-store";
+
+  /**
+   * Files below this size are cheaper to copy than to clone
+   * through an external process
+   */
+  static final long REFLINK_MIN_SIZE = 64 * 1024;
+
+  static final String REFLINK_FAILED = "cp --reflink=always failed";
+
+  /**
+   * Cause of a failure that every other file would run into as well,
+   * null for one that only concerns the file, e.g. missing permissions
+   *
+   * @param e failure of link or reflink
+   * @return short name of the cause or null
+   */
+  static String repeatingCause(final Exception e) {
+    if (e instanceof UnsupportedOperationException) {
+      return "unsupported";
+    }
+    final String reason = e instanceof FileSystemException
+        ? ((FileSystemException) e).getReason()
+        : e.getMessage();
+    if (reason != null && reason.contains("cross-device")) {
+      return "cross-device";
+    }
+    if (reason != null && (reason.startsWith("Cannot run program")
+        || reason.startsWith(FileCopier.REFLINK_FAILED))) {
+      return "reflink";
+    }
+    return null;
+  }
+
+  final PreprocessorConfig config;
+  final Path store;
+  final Map<Path, Path> storedFiles = new ConcurrentHashMap<>();
+  /**
+   * Causes that disabled linking in this build
+   */
+  final Set<String> fallbackCauses = ConcurrentHashMap.newKeySet();
+
+  public FileCopier(final PreprocessorConfig config) {
+    this.config = config;
+    this.store = config.target.resolve(FileCopier.STORE_PATH);
+  }
+
+  /**
+   * Copy, link or clone a file, replacing an existing destination
+   *
+   * @param source Path of the source file
+   * @param destination Path of the target file, its directory exists
+   * @return false when a copy had the content already
+   * @throws IOException when even the fallback copy fails
+   */
+  public boolean copy(final Path source, final Path destination) throws IOException {
+    if (this.fallbackCauses.isEmpty() && !CopyStrategy.COPY.equals(this.config.copyStrategy)) {
+      try {
+        if (this.link(source, destination)) {
+          return true;
+        }
+      } catch (final IOException | UnsupportedOperationException e) {
+        final String cause = FileCopier.repeatingCause(e);
+        if (cause == null) {
+          BuildLog.warn("%s not possible for %s (%s), copying it%n",
+              this.config.copyStrategy, destination, e.getMessage());
+        } else if (this.fallbackCauses.add(cause)) {
+          BuildLog.warn("%s not possible for %s (%s), falling back to copy%n",
+              this.config.copyStrategy, destination, e.getMessage());
+        }
+      }
+    }
+    return OutputFiles.copy(source, destination);
+  }
+
+  /**
+   * Tries linking again, the next build may run on other file systems
+   */
+  public void reset() {
+    this.fallbackCauses.clear();
+  }
+
+  /**
+   * @return true when the destination was created, false to use a copy
+   */
+  boolean link(final Path source, final Path destination) throws IOException {
+    switch (this.config.copyStrategy) {
+      case HARDLINK:
+        if (Files.exists(destination) && Files.isSameFile(source, destination)) {
+          return true;
+        }
+        Files.deleteIfExists(destination);
+        Files.createLink(destination, source);
+        return true;
+      case REFLINK:
+        return Files.size(source) >= FileCopier.REFLINK_MIN_SIZE
+            && FileCopier.reflink(source, destination);
+      case SYMLINK:
+        return this.symlink(source, destination);
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Links the destination to the copy of the source in the store
+   */
+  boolean symlink(final Path source, final Path destination) throws IOException {
+    final Path stored = this.storedFiles.computeIfAbsent(source, this::storeFile);
+    if (stored == null) {
+      throw new IOException("Can't add file to " + this.store);
+    }
+    final Path relative =
+        destination.toAbsolutePath().getParent().relativize(stored.toAbsolutePath());
+    if (Files.isSymbolicLink(destination)
+        && relative.equals(Files.readSymbolicLink(destination))) {
+      return true;
+    }
+    Files.deleteIfExists(destination);
+    Files.createSymbolicLink(destination, relative);
+    return true;
+  }
+
+  /**
+   * Forget the stored copy of a changed source file
+   *
+   * @param source Path of the source file
+   */
+  public void forget(final Path source) {
+    this.storedFiles.remove(source);
+  }
+
+  /**
+   * Clones a file using cp, the JDK has no API for FICLONE
+   */
+  static boolean reflink(final Path source, final Path destination) throws IOException {
+    final Process p = new ProcessBuilder("cp", "--reflink=always", source.toString(),
+        destination.toString())
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .start();
+    try {
+      if (!p.waitFor(1, TimeUnit.MINUTES) || p.exitValue() != 0) {
+        throw new IOException(FileCopier.REFLINK_FAILED);
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      p.destroy();
+      throw new IOException(e);
+    }
+    return true;
+  }
+
+  /**
+   * Deletes files of the store no symlink in the target docs
+   * and extra directories points to anymore
+   *
+   * @return number of deleted files
+   * @throws IOException when walking the target fails
+   */
+  public int collectGarbage() throws IOException {
+    if (!Files.isDirectory(this.store)) {
+      return 0;
+    }
+    final Path store = this.store.toAbsolutePath().normalize();
+    final Set<Path> referenced = new HashSet<>();
+    final List<Path> roots = new ArrayList<>();
+    roots.add(this.config.rootForMarkdownTarget());
+    this.config.extraDirs.forEach(d -> roots.add(this.config.target.resolve(d)));
+    for (final Path root : roots) {
+      if (!Files.isDirectory(root)) {
+        continue;
+      }
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+            throws IOException {
+          if (attrs.isSymbolicLink()) {
+            final Path linked = file.toAbsolutePath().getParent()
+                .resolve(Files.readSymbolicLink(file)).normalize();
+            if (linked.startsWith(store)) {
+              referenced.add(linked);
+            }
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    final AtomicInteger deleted = new AtomicInteger();
+    Files.walkFileTree(store, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+          throws IOException {
+        if (!referenced.contains(file.toAbsolutePath().normalize())) {
+          Files.delete(file);
+          BuildLog.file("PRUNE %s%n", file);
+          deleted.incrementAndGet();
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(final Path dir, final IOException exc)
+          throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+          if (!entries.iterator().hasNext()) {
+            Files.delete(dir);
+          }
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    this.storedFiles.values().removeIf(p -> !referenced.contains(p.toAbsolutePath().normalize()));
+    return deleted.get();
+  }
+
+  /**
+   * Adds a file to the content store, named by its hash
+   *
+   * @return Path in the store or null on error
+   */
+  Path storeFile(final Path source) {
+    try {
+      final String hash = BuildManifest.hash(source);
+      final String name = source.getFileName().toString();
+      final int dot = name.lastIndexOf('.');
+      final Path stored = this.store.resolve(hash.substring(0, 2))
+          .resolve(dot > 0 ? hash + name.substring(dot) : hash);
+      if (!Files.exists(stored)) {
+        Files.createDirectories(stored.getParent());
+        final Path temp = OutputFiles.tempFor(stored);
+        Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp, stored, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      }
+      return stored;
+    } catch (final IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+}
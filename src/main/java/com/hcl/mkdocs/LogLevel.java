@@ -0,0 +1,64 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+/**
+ * How much the preprocessor prints, warnings are always printed
+ */
+public enum LogLevel {
+
+  /**
+   * Warnings and errors only
+   */
+  QUIET,
+
+  /**
+   * One line per build or batch of changes
+   */
+  SUMMARY,
+
+  /**
+   * Every copied, rendered or deleted file
+   */
+  FILES;
+
+  /**
+   * Get the log level from the incoming string,
+   * anything unknown results in SUMMARY
+   *
+   * @param incoming String to check
+   * @return LogLevel
+   */
+  public static LogLevel get(final String incoming) {
+    final String incomingLower = String.valueOf(incoming).toLowerCase();
+    if (incomingLower.startsWith("q")) {
+      return QUIET;
+    }
+    if (incomingLower.startsWith("f") || incomingLower.startsWith("v")) {
+      return FILES;
+    }
+    return SUMMARY;
+  }
+
+  /**
+   * @param other level of a message
+   * @return true when messages of the other level get printed
+   */
+  public boolean includes(final LogLevel other) {
+    return this.compareTo(other) >= 0;
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A markdown source read once: its front-matter and
+ * the byte offset where the markdown body starts
+ */
+public class MarkdownDocument {
+
+  /**
+   * Reads the start of a file in chunks and finds line breaks
+   * on the byte level, without decoding the file
+   */
+  static final class HeaderReader {
+    final FileChannel channel;
+    byte[] data = new byte[MarkdownDocument.CHUNK_SIZE];
+    int filled = 0;
+
+    HeaderReader(final FileChannel channel) {
+      this.channel = channel;
+    }
+
+    boolean fill() throws IOException {
+      if (this.filled == this.data.length) {
+        this.data = Arrays.copyOf(this.data, this.data.length * 2);
+      }
+      final ByteBuffer free =
+          ByteBuffer.wrap(this.data, this.filled, this.data.length - this.filled);
+      final int read = this.channel.read(free);
+      if (read < 0) {
+        return false;
+      }
+      this.filled += read;
+      return true;
+    }
+
+    /**
+     * @param from start of the line
+     * @return position after the line break, or end of file
+     */
+    int nextLine(final int from) throws IOException {
+      int i = from;
+      while (true) {
+        for (; i < this.filled; i++) {
+          if (this.data[i] == '\n') {
+            return i + 1;
+          }
+        }
+        if (!this.fill()) {
+          return this.filled;
+        }
+      }
+    }
+
+    String text(final int from, final int to) {
+      int end = to;
+      if (end > from && this.data[end - 1] == '\n') {
+        end--;
+      }
+      if (end > from && this.data[end - 1] == '\r') {
+        end--;
+      }
+      return new String(this.data, from, end - from, StandardCharsets.UTF_8);
+    }
+  }
+
+  static final int CHUNK_SIZE = 8192;
+
+  /**
+   * Line break of files without one in their first line
+   */
+  static final String DEFAULT_LINE_SEPARATOR = "\n";
+
+  /**
+   * Reads the front-matter of a markdown file, stops at the closing delimiter
+   *
+   * @param source Path to markdown file
+   * @param attr BasicFileAttributes of the file, used to detect changes
+   * @return MarkdownDocument
+   * @throws IOException when reading fails
+   */
+  public static MarkdownDocument read(final Path source, final BasicFileAttributes attr)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+      final HeaderReader reader = new HeaderReader(channel);
+      int offset = reader.nextLine(0);
+      final String first = reader.text(0, offset);
+      // Generated front-matter uses the line break of the source
+      final String nl = offset >= 2 && reader.data[offset - 2] == '\r' ? "\r\n"
+          : offset >= 1 && reader.data[offset - 1] == '\n' ? "\n"
+          : MarkdownDocument.DEFAULT_LINE_SEPARATOR;
+      if (!first.startsWith(YamlUtilities.YAML_DELIMITER)) {
+        // No front-matter available
+        return new MarkdownDocument(source, attr, Collections.emptyMap(), "", 0, nl);
+      }
+      final StringBuilder b = new StringBuilder();
+      while (offset < reader.filled) {
+        final int lineStart = offset;
+        offset = reader.nextLine(lineStart);
+        final String current = reader.text(lineStart, offset);
+        if (current.equals(first)) {
+          break;
+        }
+        b.append(current);
+        b.append(nl);
+      }
+      final String frontMatterText = b.toString();
+      final Map<String, Object> parsed = YamlUtilities.parseYamlFromString(frontMatterText);
+      return new MarkdownDocument(source, attr,
+          parsed == null ? Collections.emptyMap() : parsed, frontMatterText, offset, nl);
+    }
+  }
+
+  public final Path source;
+  public final long size;
+  public final long modified;
+  /**
+   * Parsed front-matter, never modified
+   */
+  public final Map<String, Object> frontMatter;
+  /**
+   * Front-matter lines between the delimiters
+   */
+  public final String frontMatterText;
+  /**
+   * Byte position of the first body line
+   */
+  public final long bodyOffset;
+  /**
+   * Line break of the first line, \n or \r\n
+   */
+  public final String lineSeparator;
+
+  MarkdownDocument(final Path source, final BasicFileAttributes attr,
+      final Map<String, Object> frontMatter, final String frontMatterText,
+      final long bodyOffset, final String lineSeparator) {
+    this.source = source;
+    this.size = attr.size();
+    this.modified = attr.lastModifiedTime().toMillis();
+    this.frontMatter = Collections.unmodifiableMap(frontMatter);
+    this.frontMatterText = frontMatterText;
+    this.bodyOffset = bodyOffset;
+    this.lineSeparator = lineSeparator;
+  }
+
+  /**
+   * @return modifiable copy of the front-matter
+   */
+  public Map<String, Object> copyOfFrontMatter() {
+    return new LinkedHashMap<>(this.frontMatter);
+  }
+
+  /**
+   * @param attr current attributes of the file
+   * @return true when the file didn't change since reading it
+   */
+  public boolean isCurrent(final BasicFileAttributes attr) {
+    return this.size == attr.size() && this.modified == attr.lastModifiedTime().toMillis();
+  }
+}
@@ -17,27 +17,59 @@
 package com.hcl.mkdocs;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MenuStructure {
 
   final Path parent;
   final PreprocessorConfig config;
-  final Map<DocVersion, Path> options = new TreeMap<>();
+  final DependencyGraph rendered;
+  final BuildMetrics metrics;
+  final VersionIndex<Path> options = new VersionIndex<>(p -> DocVersion.last());
+  /**
+   * Target paths whose existence decided the last rendered menus
+   */
+  final Set<Path> linkedPaths = ConcurrentHashMap.newKeySet();
+  /**
+   * Files written by the last renderOutput
+   */
+  Set<Path> outputs = Collections.emptySet();
 
   Path main = null;
 
-  public MenuStructure(final Path parent, final PreprocessorConfig config) {
+  /**
+   * @param parent Path of the source directory
+   * @param config PreprocessorConfig
+   * @param rendered DependencyGraph knowing the rendered pages
+   */
+  public MenuStructure(final Path parent, final PreprocessorConfig config,
+      final DependencyGraph rendered) {
+    this(parent, config, rendered, new BuildMetrics(config));
+  }
+
+  /**
+   * @param parent Path of the source directory
+   * @param config PreprocessorConfig
+   * @param rendered DependencyGraph knowing the rendered pages
+   * @param metrics BuildMetrics counting reads and writes
+   */
+  public MenuStructure(final Path parent, final PreprocessorConfig config,
+      final DependencyGraph rendered, final BuildMetrics metrics) {
     this.parent = parent;
     this.config = config;
+    this.rendered = rendered;
+    this.metrics = metrics;
   }
 
   public void addMenu(final Path incoming) {
@@ -47,8 +79,35 @@ public class MenuStructure {
       final DocVersion key =
           DocVersion
               .fromString(incoming.getFileName().toString().replace(PreprocessorConfig.PAGES, ""));
-      this.options.put(key, incoming);
+      final Path previous = this.options.put(key, incoming);
+      if (previous != null && !previous.equals(incoming)) {
+        BuildLog.warn("Warning: %s replaces %s for %s%n%n", incoming, previous, key);
+      }
+    }
+  }
+
+  /**
+   * Removes a deleted .pages file
+   *
+   * @param incoming Path of the deleted file
+   */
+  public void removeMenu(final Path incoming) {
+    if (incoming.equals(this.main)) {
+      this.main = null;
+    } else {
+      this.options.removeVariant(incoming);
+    }
+  }
+
+  /**
+   * @return all .pages source files of this directory
+   */
+  public List<Path> sources() {
+    final List<Path> result = new ArrayList<>(this.options.values());
+    if (this.main != null) {
+      result.add(this.main);
     }
+    return result;
   }
 
   Map<String, Object> checkThatLinkedPagesExist(final Path parentDir,
@@ -76,10 +135,11 @@ public class MenuStructure {
     if (e instanceof Map) {
       @SuppressWarnings("unchecked")
       final Map<String, Object> navEntry = (Map<String, Object>) e;
-      MenuStructure.copyIfPageExistsMap(parentDir, navEntry, newNav);
+      this.copyIfPageExistsMap(parentDir, navEntry, newNav);
     } else if (e instanceof String) {
       final Path pagePath = parentDir.resolve(String.valueOf(e));
-      if (pagePath.toFile().exists()) {
+      this.linkedPaths.add(pagePath.normalize());
+      if (this.rendered.exists(pagePath)) {
         newNav.add(e);
       }
     } else {
@@ -87,16 +147,17 @@ public class MenuStructure {
     }
   }
 
-  static void copyIfPageExistsMap(final Path parentDir, final Map<String, Object> navEntry,
+  void copyIfPageExistsMap(final Path parentDir, final Map<String, Object> navEntry,
       final List<Object> newNav) {
     final Map<String, Object> newNavEntry = new HashMap<>();
     navEntry.entrySet().forEach(entry -> {
       if (entry.getValue() instanceof String) {
         final Path pagePath = parentDir.resolve(String.valueOf(entry.getValue()));
-        if (pagePath.toFile().exists()) {
+        this.linkedPaths.add(pagePath.normalize());
+        if (this.rendered.exists(pagePath)) {
           newNavEntry.put(entry.getKey(), entry.getValue());
         } else {
-          System.err.printf("Page %s not found for %s%s%n", pagePath, parentDir,
+          BuildLog.warn("Page %s not found for %s%s%n", pagePath, parentDir,
               PreprocessorConfig.PAGES);
         }
       } else {
@@ -109,24 +170,67 @@ public class MenuStructure {
   }
 
   Path getSource(final DocVersion v) {
-    Path result = null;
-    if (this.options.containsKey(v)) {
-      result = this.options.get(v);
-    } else {
-      final Set<Entry<DocVersion, Path>> candidates = this.options.entrySet();
-      for (final Entry<DocVersion, Path> candidate : candidates) {
-        if (candidate.getKey().compareTo(v) < 0) {
-          result = candidate.getValue();
-        }
+    final Path result = this.options.resolve(v);
+    return result == null ? this.main : result;
+  }
+
+  /**
+   * Outputs renderOutput would write, without checking the links.
+   * Used for menus an incremental build doesn't render again
+   *
+   * @return Set of target paths
+   */
+  public Set<Path> plannedOutputs() {
+    final Set<Path> result = new LinkedHashSet<>();
+    for (final DocVersion v : this.config.renderedVersions()) {
+      final Path source = this.getSource(v);
+      if (source != null) {
+        result.add(this.getTarget(source, v.toString()));
       }
     }
-    if (result == null) {
-      result = this.main;
-    }
+    return result;
+  }
 
+  /**
+   * Targets the menus link to, without checking them.
+   * Used for menus an incremental build doesn't render again
+   *
+   * @return Set of normalized target paths
+   */
+  public Set<Path> plannedLinks() {
+    final Set<Path> result = new HashSet<>();
+    final Map<Path, Object> navs = new HashMap<>();
+    for (final DocVersion v : this.config.renderedVersions()) {
+      final Path source = this.getSource(v);
+      if (source == null) {
+        continue;
+      }
+      final Path parentDir = this.getTarget(source, v.toString()).getParent();
+      try {
+        if (!navs.containsKey(source)) {
+          navs.put(source, YamlUtilities.parseYaml(source).get("nav"));
+        }
+      } catch (final IOException e) {
+        e.printStackTrace();
+        continue;
+      }
+      if (navs.get(source) instanceof List) {
+        ((List<?>) navs.get(source)).forEach(e -> MenuStructure.addLinks(parentDir, e, result));
+      }
+    }
     return result;
   }
 
+  static void addLinks(final Path parentDir, final Object e, final Set<Path> links) {
+    if (e instanceof Map) {
+      ((Map<?, ?>) e).values().stream()
+          .filter(String.class::isInstance)
+          .forEach(v -> links.add(parentDir.resolve((String) v).normalize()));
+    } else if (e instanceof String) {
+      links.add(parentDir.resolve((String) e).normalize());
+    }
+  }
+
   Path getTarget(final Path actual, final String vString) {
     final Path pagePath = actual.getParent().resolve(PreprocessorConfig.PAGES);
     final Path source = this.config.rootForMarkdownSource();
@@ -134,50 +238,95 @@ public class MenuStructure {
     return PathUtilities.mapSourceTreeToTarget(source, target, pagePath);
   }
 
-  public void inspectAndSave(final Path source, final Path destination) {
-    final Path parentDir = destination.getParent();
+  /**
+   * @param source Path of the .pages file
+   * @param destination Path to write to
+   * @return true when the destination got written
+   */
+  public boolean inspectAndSave(final Path source, final Path destination) {
+    try {
+      return this.inspectAndSave(YamlUtilities.parseYaml(source), destination);
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+    return false;
+  }
+
+  /**
+   * @param yaml parsed .pages file, not modified
+   * @param destination Path to write to
+   * @return true when the destination got written
+   * @throws IOException when writing fails
+   */
+  boolean inspectAndSave(final Map<String, Object> yaml, final Path destination)
+      throws IOException {
+    final Map<String, Object> newYaml =
+        this.checkThatLinkedPagesExist(destination.getParent(), yaml);
+    if (!newYaml.isEmpty()) {
+      final byte[] bytes =
+          YamlUtilities.generateYamlString(newYaml).getBytes(StandardCharsets.UTF_8);
+      if (OutputFiles.write(destination, bytes)) {
+        this.metrics.written(bytes.length);
+      }
+      this.metrics.countOutput("menu");
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Parses every .pages source once per render, versions
+   * sharing a source only filter it differently
+   *
+   * @param parsed sources parsed so far in this render
+   * @param source Path of the .pages file
+   * @param destination Path to write to
+   * @return true when the destination got written
+   */
+  boolean inspectAndSave(final Map<Path, Map<String, Object>> parsed, final Path source,
+      final Path destination) {
     try {
-      final Map<String, Object> yaml = YamlUtilities.parseYaml(source);
-      final Map<String, Object> newYaml = this.checkThatLinkedPagesExist(parentDir, yaml);
-      if (!newYaml.isEmpty()) {
-        YamlUtilities.saveYaml(destination, newYaml);
+      Map<String, Object> yaml = parsed.get(source);
+      if (yaml == null) {
+        yaml = YamlUtilities.parseYaml(source);
+        parsed.put(source, yaml);
+        this.metrics.read(source.toFile().length());
       }
+      return this.inspectAndSave(yaml, destination);
     } catch (final IOException e) {
       e.printStackTrace();
+      this.metrics.failed(source);
     }
+    return false;
   }
 
   public void renderOutput() {
+    this.linkedPaths.clear();
+    final Set<Path> rendered = new LinkedHashSet<>();
+    final Map<Path, Map<String, Object>> parsed = new HashMap<>();
     Path source = null;
     DocVersion v = null;
-    for (final DocVersion dv : this.config.versions) {
+    for (final DocVersion dv : this.config.renderedVersions()) {
       v = dv;
       source = this.getSource(v);
       if (source != null) {
         final Path actual = this.getTarget(source, v.toString());
         try {
-          System.out.printf("Copy %s to %s%n", source, actual);
+          BuildLog.file("MENU %s -> %s%n", source, actual);
           Files.createDirectories(actual.getParent());
           // Ensuring .pages doesn't point to pages not copied in a version
-          this.inspectAndSave(source, actual);
+          if (this.inspectAndSave(parsed, source, actual)) {
+            rendered.add(actual);
+          }
         } catch (final Exception e) {
           e.printStackTrace();
+          this.metrics.failed(source);
         }
       } else {
-        System.err.printf("No .pages file for %s%n", v.toString());
-      }
-    }
-
-    if (this.config.generateLatest && source != null) {
-      final Path latest = this.getTarget(source, "latest");
-      try {
-        Files.createDirectories(latest.getParent());
-        System.out.printf("COPY %s%n  TO %s%n%n", source, latest);
-        this.inspectAndSave(source, latest);
-      } catch (final IOException e) {
-        e.printStackTrace();
+        BuildLog.warn("No .pages file for %s%n", v.toString());
       }
     }
+    this.outputs = rendered;
 
   }
 
@@ -28,26 +28,43 @@ import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * MkDocsPreprocessor class to handle MkDocs file preprocessing based on the configuration.
  */
 public class MkDocsPreprocessor {
 
+  static final String VERSIONS_OPTION = "--versions=";
+
   /**
    * Main function to preprocess MkDocs files based on the provided configuration.
    *
-   * @param args Command-line arguments. Expects one or two arguments - the path to the config file
-   *        and optional "watch" to go on watch mode
+   * @param incoming Command-line arguments. Expects one or two arguments - the path to the config
+   *        file and optional "watch" to go on watch mode, plus an optional --versions=
    */
-  public static void main(final String[] args) {
+  public static void main(final String[] incoming) {
+    // --versions=latest or --versions=v1,v2 renders a preview of some versions
+    final String versions = Arrays.stream(incoming)
+        .filter(a -> a.startsWith(MkDocsPreprocessor.VERSIONS_OPTION))
+        .map(a -> a.substring(MkDocsPreprocessor.VERSIONS_OPTION.length()))
+        .reduce(null, (x, y) -> y);
+    final String[] args = Arrays.stream(incoming)
+        .filter(a -> !a.startsWith(MkDocsPreprocessor.VERSIONS_OPTION))
+        .toArray(String[]::new);
     if (args.length < 1) {
-      System.err.println("Usage: MkDocsPreprocessor <configFilePath> [watch|buildAndWatch]");
+      System.err.println("Usage: MkDocsPreprocessor <configFilePath>"
+          + " [watch|buildAndWatch|daemon|train] [--versions=latest|v1,v2]");
       System.exit(1);
     }
 
@@ -64,9 +81,19 @@ public class MkDocsPreprocessor {
     }
 
     try {
+      if (args.length > 1 && TrainingRun.TRAIN.equals(args[1])) {
+        TrainingRun.run(configFilePath);
+        BuildLog.flush();
+        return;
+      }
       final MkDocsPreprocessor p = new MkDocsPreprocessor(configFilePath, watchMode);
+      if (versions != null) {
+        p.config.setRenderVersions(Arrays.asList(versions.split(",")));
+      }
       p.processFiles();
+      BuildLog.flush();
     } catch (final Exception e) {
+      BuildLog.flush();
       e.printStackTrace();
       System.exit(1);
     }
@@ -74,9 +101,15 @@ public class MkDocsPreprocessor {
 
 
   final SiteStructure siteStructure;
+  final FileCopier copier;
   final AtomicInteger filesCopied = new AtomicInteger();
   final PreprocessorConfig config;
   final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+  /**
+   * Source files as seen by the watcher, compared after an overflow
+   */
+  final Map<Path, BuildManifest.FileState> knownFiles = new HashMap<>();
+  boolean rescanNeeded = false;
 
   /**
    * @param configFile Path to the config.yml file.
@@ -89,6 +122,7 @@ public class MkDocsPreprocessor {
     // Get values from the configuration YAML File
     this.config = new PreprocessorConfig(configFile, watchMode);
     this.siteStructure = new SiteStructure(this.config);
+    this.copier = new FileCopier(this.config);
   }
 
   /**
@@ -108,6 +142,7 @@ public class MkDocsPreprocessor {
         new PreprocessorConfig(source, target, versionStrings, generateRedirects, generateLatest,
             watchMode);
     this.siteStructure = new SiteStructure(this.config);
+    this.copier = new FileCopier(this.config);
   }
 
   /**
@@ -115,43 +150,42 @@ public class MkDocsPreprocessor {
    *
    * @param incoming Path source file
    * @param whereTo Path target file
+   * @return Path of the copy, null for directories
    */
-  void copyToDestination(final Path incoming, final Path whereTo) {
-    if (!incoming.toFile().isFile()) {
+  Path copyToDestination(final Path incoming, final Path whereTo) {
+    if (!this.siteStructure.snapshot.isFile(incoming)) {
       // No processing of directories
-      return;
+      return null;
     }
+    final long start = System.nanoTime();
     final Path destination =
         PathUtilities.mapSourceTreeToTarget(this.config.source, whereTo, incoming);
     try {
       Files.createDirectories(destination.getParent());
-      Files.copy(incoming, destination, StandardCopyOption.REPLACE_EXISTING);
-      System.out.printf("COPY %s%n  TO %s%n%n", incoming.toAbsolutePath(),
-          destination.toAbsolutePath());
+      final boolean written = this.copier.copy(incoming, destination);
+      final long size = this.siteStructure.snapshot.attributes(incoming).size();
+      this.siteStructure.metrics.read(size);
+      this.siteStructure.metrics.written(written ? size : 0);
+      this.siteStructure.metrics.countOutput("copy");
+      this.siteStructure.metrics.source(incoming, start);
+      BuildLog.file("COPY %s -> %s%n", incoming, destination);
     } catch (final IOException e) {
       e.printStackTrace();
+      this.siteStructure.metrics.failed(incoming);
     }
     this.filesCopied.incrementAndGet();
+    return destination;
   }
 
   /**
    * Get all the non-md containing directories and copy them to the target
+   *
+   * @param snapshot SourceSnapshot with the files of the extra directories
    */
-  void getExtraDirs() {
+  void getExtraDirs(final SourceSnapshot snapshot) {
     // handle extra dirs - theme_overrides
-
-    this.config.extraDirs.forEach(dir -> {
-      final Path themeover = this.config.source.resolve(dir);
-      if (themeover.toFile().isDirectory()) {
-        try (Stream<Path> allFiles = Files.walk(themeover)) {
-          allFiles
-              .filter(Files::isRegularFile)
-              .forEach(p -> this.copyToDestination(p, this.config.target));
-        } catch (final Exception e) {
-          e.printStackTrace();
-        }
-      }
-    });
+    snapshot.ofKind(SourceSnapshot.Kind.EXTRA)
+        .forEach(e -> this.copyToTarget(e.path, RenderTime.LATER));
   }
 
   /**
@@ -168,14 +202,53 @@ public class MkDocsPreprocessor {
     if (incoming.startsWith(current)) {
       // Processing required
       this.handleVersions(incoming, renderTime);
+    } else if (this.siteStructure.isLanding(incoming)) {
+      // Rendered with links to the latest version, never copied or linked
+      this.siteStructure.addLanding(incoming, renderTime);
     } else {
       // 1:1 copy
-      this.copyToDestination(incoming, this.config.target);
+      this.copyToTarget(incoming, renderTime);
     }
   }
 
+  void copyToTarget(final Path incoming, final RenderTime renderTime) {
+    final boolean unchanged = this.skipUnchanged(incoming, renderTime);
+    final Path destination = this.copyUnlessUnchanged(incoming, this.config.target, unchanged);
+    if (destination != null) {
+      this.siteStructure.addCopy(incoming, List.of(destination), renderTime);
+    }
+  }
+
+  /**
+   * Unchanged copies are still recorded as outputs,
+   * menus check their links against them
+   *
+   * @param incoming Path source file
+   * @param whereTo Path target root
+   * @param unchanged true when the copy from the previous build is current
+   * @return Path of the copy, null for directories
+   */
+  Path copyUnlessUnchanged(final Path incoming, final Path whereTo, final boolean unchanged) {
+    return unchanged
+        ? PathUtilities.mapSourceTreeToTarget(this.config.source, whereTo, incoming)
+        : this.copyToDestination(incoming, whereTo);
+  }
+
+  /**
+   * In an incremental batch build copies of unchanged
+   * files are already in the target directory
+   *
+   * @param incoming Path source file
+   * @param renderTime When to render the file, now or later
+   * @return true if the copy can be skipped
+   */
+  boolean skipUnchanged(final Path incoming, final RenderTime renderTime) {
+    return RenderTime.LATER.equals(renderTime)
+        && this.siteStructure.manifest.isUnchanged(incoming);
+  }
+
   void handleVersions(final Path incoming, final RenderTime renderTime) {
-    if (!incoming.toFile().isFile()) {
+    if (!this.siteStructure.snapshot.isFile(incoming)) {
       // No processing of directories
       return;
     }
@@ -187,10 +260,16 @@ public class MkDocsPreprocessor {
       this.siteStructure.addMenu(incoming, renderTime);
     } else {
       // 1:1 copies
-      for (final DocVersion v : this.config.versions) {
+      final boolean unchanged = this.skipUnchanged(incoming, renderTime);
+      final List<Path> destinations = new ArrayList<>();
+      for (final DocVersion v : this.config.renderedVersions()) {
         final Path whereto = this.config.rootForMarkdownTarget().resolve(v.toString());
-        this.copyToDestination(incoming, whereto);
+        final Path destination = this.copyUnlessUnchanged(incoming, whereto, unchanged);
+        if (destination != null) {
+          destinations.add(destination);
+        }
       }
+      this.siteStructure.addCopy(incoming, destinations, renderTime);
     }
   }
 
@@ -209,17 +288,18 @@ public class MkDocsPreprocessor {
    * @throws IOException If an I/O error occurs.
    */
   public int processFiles() throws IOException {
+    BuildLog.setLevel(this.config.logLevel);
 
     // Check for mkdocs and docs directory
     final Path mkdocsyml = this.config.source.resolve("mkdocs.yml");
     if (!mkdocsyml.toFile().exists()) {
-      System.err.printf("mkdocs.yml not found in %s%n", this.config.source.toAbsolutePath());
+      BuildLog.warn("mkdocs.yml not found in %s%n", this.config.source.toAbsolutePath());
       return -1;
     }
 
     final Path docdir = this.config.source.resolve(PreprocessorConfig.DOCS_PATH);
     if (!docdir.toFile().exists() || !docdir.toFile().isDirectory()) {
-      System.err.printf("%s directory not found in %s%n", PreprocessorConfig.DOCS_PATH,
+      BuildLog.warn("%s directory not found in %s%n", PreprocessorConfig.DOCS_PATH,
           this.config.source.toAbsolutePath());
       return -1;
     }
@@ -237,43 +317,155 @@ public class MkDocsPreprocessor {
     Files.createDirectories(docdirTarget);
     Files.copy(mkdocsyml, mkdocsymlTarget, StandardCopyOption.REPLACE_EXISTING);
 
-    // Copy extra directories like custom_theme
-    this.getExtraDirs();
-
-    // Iterate through the source directory
-    try (Stream<Path> allFiles = Files.walk(docdir)) {
-      allFiles
-          .filter(Files::isRegularFile)
-          .forEach(f -> this.handleOnePath(f, RenderTime.LATER));
+    final BuildMetrics metrics = this.siteStructure.metrics;
+    metrics.start();
+    this.copier.reset();
+
+    // State of the previous build for incremental runs
+    long start = System.nanoTime();
+    this.siteStructure.manifest.load();
+    metrics.phase(BuildMetrics.MANIFEST, start);
+
+    // One walk collects all sources and their attributes
+    start = System.nanoTime();
+    final SourceSnapshot snapshot = SourceSnapshot.scan(this.config);
+    snapshot.entries.values().forEach(e -> metrics.countSource(e.kind));
+    metrics.phase(BuildMetrics.TREE_WALK, start);
+    this.siteStructure.useSnapshot(snapshot);
+    try {
+      // Copy extra directories like custom_theme
+      start = System.nanoTime();
+      this.getExtraDirs(snapshot);
+      metrics.phase(BuildMetrics.EXTRA_DIRS, start);
+
+      // Iterate through the source directory, parses the page variations
+      start = System.nanoTime();
+      snapshot.entries.values().stream()
+          .filter(e -> SourceSnapshot.Kind.MARKDOWN.equals(e.kind)
+              || SourceSnapshot.Kind.PAGES.equals(e.kind))
+          .forEach(e -> this.handleOnePath(e.path, RenderTime.LATER));
+      metrics.phase(BuildMetrics.PAGE_VARIATIONS, start);
+
+      // Assets below docs are copied 1:1
+      start = System.nanoTime();
+      snapshot.ofKind(SourceSnapshot.Kind.ASSET)
+          .forEach(e -> this.handleOnePath(e.path, RenderTime.LATER));
+      metrics.phase(BuildMetrics.ASSET_COPY, start);
+
+      this.siteStructure.renderOutput();
+      if (this.config.pruneOutputs) {
+        start = System.nanoTime();
+        this.siteStructure.pruneStale();
+        metrics.phase(BuildMetrics.PRUNE, start);
+      }
+      if (CopyStrategy.SYMLINK.equals(this.config.copyStrategy)) {
+        start = System.nanoTime();
+        this.copier.collectGarbage();
+        metrics.phase(BuildMetrics.PRUNE, start);
+      }
+      start = System.nanoTime();
+      this.siteStructure.manifest.forget(metrics.failed);
+      this.siteStructure.manifest.save();
+      metrics.phase(BuildMetrics.MANIFEST, start);
+      if (this.config.versionSites) {
+        start = System.nanoTime();
+        this.buildSites();
+        metrics.phase(BuildMetrics.SITES, start);
+      }
+    } finally {
+      // Watch mode needs to see changes on disk
+      this.siteStructure.useSnapshot(SourceSnapshot.EMPTY);
     }
-
-    this.siteStructure.renderOutput();
+    metrics.finish();
+    BuildLog.info("Built %s sources into %s files in %s ms%n", snapshot.size(),
+        metrics.outputs.values().stream().mapToLong(AtomicLong::get).sum(),
+        (metrics.finished - metrics.started) / 1000000);
+    metrics.save(this.config.metricsFile);
+    BuildLog.flush();
 
     if (this.config.watchMode.equals(WatchMode.BULID_AND_WATCH)) {
       return this.setupWatchMode();
     }
 
+    if (this.config.watchMode.equals(WatchMode.DAEMON)) {
+      return new BuildDaemon(this).serve();
+    }
+
     return this.filesCopied.get();
   }
 
-  void startWatching(final WatchService watchService, final Path sourceDir) {
+  /**
+   * Writes a mkdocs configuration per version and builds them when configured
+   *
+   * @throws IOException when writing fails or a site doesn't build
+   */
+  void buildSites() throws IOException {
+    final VersionSites sites = new VersionSites(this.config);
+    sites.write();
+    if (!this.config.buildSites) {
+      return;
+    }
+    BuildLog.flush();
+    final int failed = sites.build();
+    if (failed > 0) {
+      throw new IOException(String.format("%s site build(s) failed", failed));
+    }
+  }
 
+  /**
+   * Registers every directory below root with the watch service
+   * and records the state of the files found
+   *
+   * @param watchService WatchService to register with, null only records the files
+   * @param root Path of the directory tree
+   * @param discovered receives files not known before, null to only record them
+   * @param seen receives every file found, can be null
+   */
+  void registerTree(final WatchService watchService, final Path root,
+      final Set<Path> discovered, final Set<Path> seen) {
     try {
-      Files.walkFileTree(sourceDir, new SimpleFileVisitor<Path>() {
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
         @Override
-        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+        public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
             throws IOException {
-          WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
-              StandardWatchEventKinds.ENTRY_MODIFY);
-          watchedDirectories.put(key, dir);
+          if (watchService != null) {
+            // Registering a directory again returns its existing key
+            final WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            MkDocsPreprocessor.this.watchedDirectories.put(key, dir);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+          final BuildManifest.FileState now = new BuildManifest.FileState(attrs.size(),
+              attrs.lastModifiedTime().toMillis(), null);
+          final BuildManifest.FileState old = MkDocsPreprocessor.this.knownFiles.put(file, now);
+          if (discovered != null && (old == null || !old.sameStat(now.size, now.modified))) {
+            discovered.add(file);
+          }
+          if (seen != null) {
+            seen.add(file);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+          // Deleted while walking, the delete event follows
           return FileVisitResult.CONTINUE;
         }
       });
-    } catch (IOException e) {
+    } catch (final IOException e) {
       e.printStackTrace();
     }
   }
 
+  void startWatching(final WatchService watchService, final Path sourceDir) {
+    this.registerTree(watchService, sourceDir, null, null);
+  }
+
   int setupWatchMode() {
     try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
       this.startWatching(watchService, this.config.source);
@@ -290,12 +482,11 @@ public class MkDocsPreprocessor {
 
     while (running) {
       try {
-        WatchKey key = watchService.take();
-        running = eventLoop(key);
-        boolean valid = key.reset();
-        if (!valid) {
-          running = false;
-        }
+        final Set<Path> changed = new LinkedHashSet<>();
+        final Set<Path> deleted = new LinkedHashSet<>();
+        running = this.collectBatch(watchService, changed, deleted);
+        this.refreshWatchState(watchService, changed, deleted);
+        this.handleChanges(changed, deleted);
       } catch (InterruptedException e) {
         running = false;
       }
@@ -303,22 +494,166 @@ public class MkDocsPreprocessor {
 
   }
 
-  boolean eventLoop(final WatchKey key) {
-    boolean success = true;
-    for (WatchEvent<?> event : key.pollEvents()) {
-      success = this.handleWatchEvent(event, key);
-      if (!success) {
+  /**
+   * Waits for an event, then collects until the file system is quiet,
+   * editors save in several steps. A steady stream of events, e.g. from
+   * a generator, ends the batch after watch_max_delay
+   *
+   * @param watchService WatchService to take the events from
+   * @param changed created or modified paths, each one once
+   * @param deleted deleted paths, each one once
+   * @return false when the source directory itself is gone
+   * @throws InterruptedException when interrupted while waiting
+   */
+  boolean collectBatch(final WatchService watchService, final Set<Path> changed,
+      final Set<Path> deleted) throws InterruptedException {
+    WatchKey key = watchService.take();
+    final long deadline =
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.config.watchMaxDelay);
+    boolean running = this.eventLoop(key, changed, deleted);
+    while (running) {
+      final long left = deadline - System.nanoTime();
+      if (left <= 0) {
         break;
       }
+      key = watchService.poll(
+          Math.min(TimeUnit.MILLISECONDS.toNanos(this.config.watchQuietPeriod), left),
+          TimeUnit.NANOSECONDS);
+      if (key == null) {
+        break;
+      }
+      running = this.eventLoop(key, changed, deleted);
+    }
+    return running;
+  }
+
+  /**
+   * @return false when the source directory itself is gone
+   */
+  boolean eventLoop(final WatchKey key, final Set<Path> changed, final Set<Path> deleted) {
+    for (WatchEvent<?> event : key.pollEvents()) {
+      this.handleWatchEvent(event, key, changed, deleted);
+    }
+    if (!key.reset()) {
+      // The directory was deleted or renamed
+      final Path dir = this.watchedDirectories.remove(key);
+      key.cancel();
+      if (this.config.source.equals(dir)) {
+        BuildLog.warn("Source directory %s is gone, stopping%n", dir);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Brings the watched directories and known files in line with a batch
+   * of events. New directories get registered and their files, created
+   * before the registration, are added. After an overflow the whole tree
+   * is compared with the known files instead
+   *
+   * @param watchService WatchService to register new directories with
+   * @param changed created or modified paths, directories get replaced by their files
+   * @param deleted deleted paths, directories get replaced by their files
+   */
+  void refreshWatchState(final WatchService watchService, final Set<Path> changed,
+      final Set<Path> deleted) {
+    if (this.rescanNeeded) {
+      this.rescanNeeded = false;
+      BuildLog.info("Rescanning source after event overflow%n");
+      final Set<Path> seen = new HashSet<>();
+      this.registerTree(watchService, this.config.source, changed, seen);
+      deleted.clear();
+      this.knownFiles.keySet().stream()
+          .filter(p -> !seen.contains(p))
+          .forEach(deleted::add);
+      deleted.forEach(this.knownFiles::remove);
+      this.watchedDirectories.entrySet().removeIf(e -> !e.getKey().isValid());
+      return;
+    }
+
+    for (final Path p : new ArrayList<>(changed)) {
+      if (Files.isDirectory(p)) {
+        changed.remove(p);
+        this.registerTree(watchService, p, changed, null);
+      } else if (Files.isRegularFile(p)) {
+        this.registerTree(watchService, p, null, null);
+      }
+    }
+
+    for (final Path p : new ArrayList<>(deleted)) {
+      if (this.knownFiles.remove(p) == null) {
+        // A directory, everything known below it is gone
+        deleted.remove(p);
+        this.knownFiles.keySet().stream()
+            .filter(known -> known.startsWith(p))
+            .forEach(deleted::add);
+        this.knownFiles.keySet().removeIf(known -> known.startsWith(p));
+      }
     }
-    return success;
   }
 
-  private boolean handleWatchEvent(final WatchEvent<?> event, final WatchKey key) {
+  /**
+   * Renders one batch of changed files, every affected page
+   * and menu gets rendered only once
+   *
+   * @param changed Set of changed paths without duplicates
+   * @param deleted Set of deleted files
+   */
+  void handleChanges(final Set<Path> changed, final Set<Path> deleted) {
+    this.copier.reset();
+    final List<Path> relevant = changed.stream()
+        .filter(p -> !this.config.isIgnoredInWatch(p))
+        .toList();
+    final List<Path> removed = deleted.stream()
+        .filter(p -> !this.config.isIgnoredInWatch(p))
+        .toList();
+    if (relevant.isEmpty() && removed.isEmpty()) {
+      return;
+    }
+    BuildLog.info("Change processing for %s file(s), %s deleted%n", relevant.size(),
+        removed.size());
+    for (final Path fullPath : removed) {
+      BuildLog.file("  - %s%n", fullPath);
+      this.siteStructure.documents.evict(fullPath);
+      this.copier.forget(fullPath);
+      this.removeOnePath(fullPath);
+    }
+    for (final Path fullPath : relevant) {
+      BuildLog.file("  %s%n", fullPath);
+      this.siteStructure.documents.evict(fullPath);
+      this.copier.forget(fullPath);
+      this.handleOnePath(fullPath, RenderTime.BATCH);
+    }
+    this.siteStructure.renderPending();
+  }
+
+  /**
+   * Counterpart of handleOnePath for a deleted file
+   *
+   * @param incoming Path of the deleted file
+   */
+  void removeOnePath(final Path incoming) {
+    final String fileName = incoming.getFileName().toString();
+    if (incoming.startsWith(this.config.rootForMarkdownSource()) && fileName.endsWith(".md")) {
+      this.siteStructure.removePage(incoming);
+    } else if (incoming.startsWith(this.config.rootForMarkdownSource())
+        && fileName.endsWith(".pages")) {
+      this.siteStructure.removeMenu(incoming);
+    } else if (this.siteStructure.isLanding(incoming)) {
+      this.siteStructure.removeLanding(incoming);
+    } else {
+      this.siteStructure.removeOutputs(incoming);
+    }
+  }
+
+  private void handleWatchEvent(final WatchEvent<?> event, final WatchKey key,
+      final Set<Path> changed, final Set<Path> deleted) {
     WatchEvent.Kind<?> kind = event.kind();
     if (kind == StandardWatchEventKinds.OVERFLOW) {
-      System.err.println("Event Overflow happened, pls restart app");
-      return false;
+      BuildLog.warn("Event overflow, rescanning after this batch%n");
+      this.rescanNeeded = true;
+      return;
     }
 
     Object o = event.context();
@@ -326,20 +661,20 @@ public class MkDocsPreprocessor {
       Path filename = (Path) o;
       Path parent = watchedDirectories.get(key);
       if (parent == null) {
-        System.err.printf("No parent found for %s%n", filename);
-        return false;
+        BuildLog.warn("No parent found for %s%n", filename);
+        return;
       }
-      Path fullPath = parent.resolve(filename);
-      System.out.printf("Change processing for %s%n", fullPath);
-      if (kind == StandardWatchEventKinds.ENTRY_CREATE
-          || kind == StandardWatchEventKinds.ENTRY_MODIFY) {
-        handleOnePath(fullPath, RenderTime.NOW);
+      final Path fullPath = parent.resolve(filename);
+      if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+        changed.remove(fullPath);
+        deleted.add(fullPath);
+      } else {
+        deleted.remove(fullPath);
+        changed.add(fullPath);
       }
     } else {
-      System.err.printf("Unknown event context %s%n", o.getClass().getName());
-      return false;
+      BuildLog.warn("Unknown event context %s%n", o.getClass().getName());
     }
-    return true;
   }
 
 
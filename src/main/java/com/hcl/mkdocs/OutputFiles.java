@@ -0,0 +1,222 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes outputs only when their content changes. An unchanged target
+ * keeps its modification time, so mkdocs serve doesn't rebuild for it.
+ * Changed content goes to a hidden temp file next to the target and
+ * replaces it with an atomic rename, readers never see a partial file
+ */
+public class OutputFiles {
+
+  static final int CHUNK_SIZE = 65536;
+
+  /**
+   * @param target Path to write
+   * @param content complete new content
+   * @return true when the target got written, false when it had the content already
+   * @throws IOException when reading or writing fails
+   */
+  public static boolean write(final Path target, final byte[] content) throws IOException {
+    if (OutputFiles.sameContent(target, content)) {
+      return false;
+    }
+    final Path temp = OutputFiles.tempFor(target);
+    try {
+      Files.write(temp, content);
+    } catch (final IOException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+    OutputFiles.replace(temp, target);
+    return true;
+  }
+
+  /**
+   * Writes the header followed by the source file from bodyOffset on,
+   * using FileChannel.transferTo so the body is never decoded or copied
+   * through the heap
+   *
+   * @param source Path markdown source
+   * @param bodyOffset byte position where the body starts
+   * @param header bytes replacing everything before bodyOffset
+   * @param target Path of the file to write
+   * @return number of bytes written, 0 when the target had the content already
+   * @throws IOException when reading or writing fails
+   */
+  public static long splice(final Path source, final long bodyOffset, final byte[] header,
+      final Path target) throws IOException {
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+      final long size = in.size();
+      if (OutputFiles.sameSplice(in, bodyOffset, header, target)) {
+        return 0;
+      }
+      final Path temp = OutputFiles.tempFor(target);
+      long position = bodyOffset;
+      try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        final ByteBuffer head = ByteBuffer.wrap(header);
+        while (head.hasRemaining()) {
+          out.write(head);
+        }
+        while (position < size) {
+          final long transferred = in.transferTo(position, size - position, out);
+          if (transferred <= 0) {
+            // Source got shorter while copying
+            break;
+          }
+          position += transferred;
+        }
+      } catch (final IOException e) {
+        Files.deleteIfExists(temp);
+        throw e;
+      }
+      OutputFiles.replace(temp, target);
+      return header.length + position - bodyOffset;
+    }
+  }
+
+  /**
+   * Copies a file unless the target is a separate file with the same content.
+   * Links left by another CopyStrategy get replaced by a copy
+   *
+   * @param source Path of the source file
+   * @param target Path of the target file, its directory exists
+   * @return true when the target got written
+   * @throws IOException when reading or writing fails
+   */
+  public static boolean copy(final Path source, final Path target) throws IOException {
+    if (Files.isRegularFile(target) && !Files.isSymbolicLink(target)
+        && !Files.isSameFile(source, target) && Files.mismatch(source, target) == -1L) {
+      return false;
+    }
+    final Path temp = OutputFiles.tempFor(target);
+    try {
+      Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+    } catch (final IOException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+    OutputFiles.replace(temp, target);
+    return true;
+  }
+
+  /**
+   * Hidden temp file in the directory of the target, mkdocs skips
+   * dot files and the rename stays on one file system. Unlike
+   * Files.createTempFile the permissions follow the umask, so the
+   * output stays readable for other users
+   *
+   * @param target Path the temp file will replace
+   * @return Path of the new, empty temp file
+   * @throws IOException when the file can't be created
+   */
+  public static Path tempFor(final Path target) throws IOException {
+    final Path dir = target.toAbsolutePath().getParent();
+    while (true) {
+      final Path temp = dir.resolve(String.format(".%s.%x.tmp", target.getFileName(),
+          ThreadLocalRandom.current().nextLong()));
+      try {
+        return Files.createFile(temp);
+      } catch (final FileAlreadyExistsException e) {
+        // Try another name
+      }
+    }
+  }
+
+  static void replace(final Path temp, final Path target) throws IOException {
+    try {
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (final AtomicMoveNotSupportedException e) {
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    } catch (final IOException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+  }
+
+  static boolean sameContent(final Path target, final byte[] content) throws IOException {
+    return Files.isRegularFile(target) && !Files.isSymbolicLink(target)
+        && Files.size(target) == content.length
+        && Arrays.equals(Files.readAllBytes(target), content);
+  }
+
+  /**
+   * Compares the target with header and source body without writing anything
+   */
+  static boolean sameSplice(final FileChannel source, final long bodyOffset,
+      final byte[] header, final Path target) throws IOException {
+    final long bodyLength = Math.max(0, source.size() - bodyOffset);
+    if (!Files.isRegularFile(target) || Files.isSymbolicLink(target)
+        || Files.size(target) != header.length + bodyLength) {
+      return false;
+    }
+    try (FileChannel existing = FileChannel.open(target, StandardOpenOption.READ)) {
+      final ByteBuffer head = ByteBuffer.allocate(header.length);
+      OutputFiles.readFully(existing, 0, head);
+      if (!Arrays.equals(head.array(), header)) {
+        return false;
+      }
+      final ByteBuffer expected = ByteBuffer.allocate(OutputFiles.CHUNK_SIZE);
+      final ByteBuffer actual = ByteBuffer.allocate(OutputFiles.CHUNK_SIZE);
+      for (long done = 0; done < bodyLength; done += OutputFiles.CHUNK_SIZE) {
+        final int length = (int) Math.min(OutputFiles.CHUNK_SIZE, bodyLength - done);
+        expected.clear().limit(length);
+        actual.clear().limit(length);
+        if (!OutputFiles.readFully(source, bodyOffset + done, expected)
+            || !OutputFiles.readFully(existing, header.length + done, actual)
+            || !expected.flip().equals(actual.flip())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * @return false when the file ended before the buffer got filled
+   */
+  static boolean readFully(final FileChannel channel, final long position,
+      final ByteBuffer buffer) throws IOException {
+    long at = position;
+    while (buffer.hasRemaining()) {
+      final int read = channel.read(buffer, at);
+      if (read < 0) {
+        return false;
+      }
+      at += read;
+    }
+    return true;
+  }
+
+  private OutputFiles() {
+    // Only static methods here
+  }
+}
@@ -16,13 +16,18 @@
  */
 package com.hcl.mkdocs;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -33,35 +38,84 @@ public class PageStructure {
   final Path origin;
   final Path destinationFileName;
   final PreprocessorConfig config;
-  final Map<DocVersion, PageVariation> options = new TreeMap<>();
+  final DocumentCache documents;
+  final BuildMetrics metrics;
+  final VersionIndex<PageVariation> options = new VersionIndex<>(p -> p.maxVersion);
+  /**
+   * Files written by the last renderOutput
+   */
+  Set<Path> outputs = Collections.emptySet();
+  /**
+   * Newest rendered output and its version, the target of the versionless redirect
+   */
+  Path latestOutput = null;
+  DocVersion latestVersion = null;
 
 
-  public PageStructure(final Path origin, final PreprocessorConfig config) {
+  public PageStructure(final Path origin, final PreprocessorConfig config,
+      final DocumentCache documents) {
     this.origin = origin;
     this.config = config;
+    this.documents = documents;
+    this.metrics = documents.metrics;
     this.destinationFileName = this.origin.getFileName();
   }
 
   public void addPath(final DocVersion version, final Path incoming) {
-    this.options.put(version, new PageVariation(incoming));
+    final PageVariation previous =
+        this.options.put(version, new PageVariation(incoming, this.documents));
+    if (previous != null && !previous.source.equals(incoming)) {
+      BuildLog.warn("Warning: %s replaces %s for %s%n%n", incoming, previous.source, version);
+    }
+    for (final DocVersion other : this.options.overlaps(version)) {
+      BuildLog.warn("Warning: %s and %s of %s overlap, max_version is ignored%n%n", version,
+          other, this.origin);
+    }
+  }
+
+  /**
+   * Removes a deleted variation
+   *
+   * @param version DocVersion of the deleted file
+   */
+  public void removePath(final DocVersion version) {
+    this.options.remove(version);
+  }
+
+  /**
+   * @return all source files of this page
+   */
+  public List<Path> sources() {
+    return this.options.values().stream().map(p -> p.source).toList();
   }
 
   void copyMarkdown(final Set<DocVersion> versions, final DocVersion version, final Path source,
       final Path target) {
-    System.out.printf("%s%n from: %s%n   to: %s%n%n", version, source, target);
+    BuildLog.file("PAGE %s %s -> %s%n", version, source, target);
     try {
       Files.createDirectories(target.getParent());
     } catch (final IOException e) {
       e.printStackTrace();
+      this.metrics.failed(source);
       return;
     }
-    try (FileOutputStream out = new FileOutputStream(target.toFile());
-        PrintWriter pw = new PrintWriter(out)) {
-      final Map<String, Object> yaml = YamlUtilities.parseYamlFromMarkdown(source);
-      YamlUtilities.patchYamlWithVersions(versions, version, yaml);
-      YamlUtilities.replaceFrontMatter(source, yaml, pw);
+    try {
+      final MarkdownDocument doc = this.documents.get(source);
+      final long written;
+      if (this.config.preserveFrontMatter && !YamlUtilities.hasVersionKeys(doc.frontMatter)
+          && YamlUtilities.canAppendKeys(doc.frontMatterText)) {
+        written = YamlUtilities.injectVersions(doc, versions, version, target);
+      } else {
+        final Map<String, Object> yaml = doc.copyOfFrontMatter();
+        YamlUtilities.patchYamlWithVersions(versions, version, yaml);
+        written = YamlUtilities.writeMarkdown(doc, yaml, target);
+      }
+      this.metrics.read(doc.size - doc.bodyOffset);
+      this.metrics.written(written);
+      this.metrics.countOutput("markdown");
     } catch (final IOException e) {
       e.printStackTrace();
+      this.metrics.failed(source);
     }
   }
 
@@ -72,17 +126,71 @@ public class PageStructure {
     return Paths.get(prefix, rawPath.toString()).toString();
   }
 
-  void outputRedirect(final Path actual, final DocVersion v, final String title) {
+  /**
+   * The redirect of the top level index.md would be replaced by the
+   * landing page right away, writing it only changes its timestamp.
+   * Without a landing page source the redirect is the root index.md
+   */
+  boolean isLandingPage(final Path redirect) {
+    return redirect.equals(this.config.rootForMarkdownTarget().resolve(PreprocessorConfig.INDEX))
+        && this.documents.snapshot.isFile(this.config.source
+            .resolve(PreprocessorConfig.DOCS_PATH).resolve(PreprocessorConfig.INDEX));
+  }
+
+  /**
+   * @return versionless URL of this page, null when it has no redirect
+   */
+  String redirectFrom() {
+    if (this.latestOutput == null) {
+      return null;
+    }
+    final Path from = PathUtilities.stripPath(this.latestOutput, this.latestVersion.toString());
+    return this.isLandingPage(from) ? null : this.siteUrl(from);
+  }
+
+  /**
+   * @return URL of the newest version of this page
+   */
+  String redirectTo() {
+    return this.siteUrl(this.latestOutput);
+  }
+
+  /**
+   * URL of a markdown output with mkdocs' default use_directory_urls
+   *
+   * @param output Path below the target docs directory
+   * @return absolute, percent encoded URL path
+   */
+  String siteUrl(final Path output) {
+    String page = this.config.rootForMarkdownTarget().relativize(output).toString()
+        .replace('\\', '/');
+    if (page.equals(PreprocessorConfig.INDEX) || page.endsWith("/" + PreprocessorConfig.INDEX)) {
+      page = page.substring(0, page.length() - PreprocessorConfig.INDEX.length());
+    } else if (page.endsWith(".md")) {
+      page = page.substring(0, page.length() - 3) + "/";
+    }
+    try {
+      return new URI(null, null, "/" + page, null).toASCIIString();
+    } catch (final URISyntaxException e) {
+      return "/" + page;
+    }
+  }
+
+  Path outputRedirect(final Path actual, final DocVersion v, final String title) {
     if (actual == null || v == null) {
-      return;
+      return null;
     }
     final Path redirectFrom = PathUtilities.stripPath(actual, v.toString());
+    if (this.isLandingPage(redirectFrom)) {
+      return null;
+    }
 
     try {
       Files.createDirectories(redirectFrom.getParent());
     } catch (final IOException e) {
       e.printStackTrace();
-      return;
+      this.sources().forEach(this.metrics::failed);
+      return null;
     }
 
     final String mdRedirect = this.getMdRedirect(actual);
@@ -90,8 +198,8 @@ public class PageStructure {
         ? mdRedirect.replace("index.md", "")
         : mdRedirect.replace(".md", ".html");
 
-    final File file = redirectFrom.toFile();
-    try (PrintWriter pw = new PrintWriter(file)) {
+    final StringWriter content = new StringWriter();
+    try (PrintWriter pw = new PrintWriter(content)) {
       pw.println("---");
       pw.println("template: versionredirect.html");
       pw.print("redirect: ");
@@ -104,47 +212,103 @@ public class PageStructure {
       pw.println("");
       pw.println(String.format("[Latest version of %s](%s)", title, mdRedirect));
       pw.println("Click on the link if page doesn't load");
-      pw.flush();
+    }
+    final byte[] bytes = content.toString().getBytes(StandardCharsets.UTF_8);
+    try {
+      if (OutputFiles.write(redirectFrom, bytes)) {
+        this.metrics.written(bytes.length);
+      }
     } catch (final IOException e) {
       e.printStackTrace();
+      this.sources().forEach(this.metrics::failed);
     }
+    this.metrics.countOutput("redirect");
+    return redirectFrom;
+  }
+
+  /**
+   * @param pages versions of the page, front-matter lists all of them
+   * @return true when the version the redirect points at gets rendered
+   */
+  boolean newestRendered(final Map<DocVersion, PageVariation> pages) {
+    return !pages.isEmpty()
+        && this.config.renderedVersions().contains(Collections.max(pages.keySet()));
   }
 
   Map<DocVersion, PageVariation> preparePageList(final Set<DocVersion> versions,
-      final Map<DocVersion, PageVariation> pages) {
+      final VersionIndex<PageVariation> pages) {
 
     final Map<DocVersion, PageVariation> result = new TreeMap<>();
 
-    // Part 1: Check if we have direct hits
     for (final PageVariation p : pages.values()) {
-      if (versions.contains(p.minVersion)) {
-        result.put(p.minVersion, p);
-      } else {
-        System.out.printf("Warning: %s found but not requested for rendering%n%s%n%n",
+      if (!versions.contains(p.minVersion)) {
+        BuildLog.warn("Warning: %s found but not requested for rendering%n%s%n%n",
             p.minVersion, p.source);
       }
     }
 
-    // Part 2: check if there is a suitable version
+    // Direct hit or closest variant below that still covers the version
     for (final DocVersion v : versions) {
-      if (!result.containsKey(v)) {
-        // Need closest match, a little brute force here
-        for (final PageVariation p : pages.values()) {
-          if (p.minVersion.compareTo(v) <= 0 &&
-              p.maxVersion.compareTo(v) >= 0) {
-            result.put(v, p);
-          }
-        }
+      final PageVariation p = pages.resolve(v);
+      if (p != null) {
+        result.put(v, p);
       }
     }
 
     return result;
   }
 
+  /**
+   * @param from Path of the source variation
+   * @param vString version directory
+   * @return Path of the rendered page
+   */
+  Path getTarget(final Path from, final String vString) {
+    return PathUtilities
+        .mapSourceTreeToTarget(this.config.rootForMarkdownSource(),
+            this.config.rootForMarkdownTarget().resolve(vString), from)
+        .getParent()
+        .resolve(this.destinationFileName);
+  }
+
+  /**
+   * Outputs renderOutput would write, without writing them.
+   * Used for pages an incremental build doesn't render again
+   *
+   * @return Set of target paths
+   */
+  public Set<Path> plannedOutputs() {
+    final Map<DocVersion, PageVariation> pages =
+        this.preparePageList(this.config.versions, this.options);
+    final Set<Path> result = new LinkedHashSet<>();
+    Path actual = null;
+    DocVersion v = null;
+    for (final Entry<DocVersion, PageVariation> entry : pages.entrySet()) {
+      v = entry.getKey();
+      if (this.config.renderedVersions().contains(v)) {
+        actual = this.getTarget(entry.getValue().source, v.toString());
+        result.add(actual);
+      }
+    }
+    if (!this.newestRendered(pages)) {
+      actual = null;
+    }
+    this.latestOutput = actual;
+    this.latestVersion = v;
+    if (actual != null) {
+      final Path redirect = PathUtilities.stripPath(actual, v.toString());
+      if (this.config.redirectStubs() && !this.isLandingPage(redirect)) {
+        result.add(redirect);
+      }
+    }
+    return result;
+  }
+
   public void renderOutput() {
 
     final Map<DocVersion, PageVariation> pages =
         this.preparePageList(this.config.versions, this.options);
+    final Set<Path> rendered = new LinkedHashSet<>();
 
     Path actual = null;
     Path from = null;
@@ -154,28 +318,29 @@ public class PageStructure {
     for (final Entry<DocVersion, PageVariation> entry : pages.entrySet()) {
       final PageVariation p = entry.getValue();
       v = entry.getKey();
+      if (!this.config.renderedVersions().contains(v)) {
+        continue;
+      }
       title = p.title != null ? p.title : this.destinationFileName.toString();
       from = p.source;
-      final Path toCandidate =
-          PathUtilities.mapSourceTreeToTarget(this.config.rootForMarkdownSource(),
-              this.config.rootForMarkdownTarget().resolve(v.toString()), from);
-      actual = toCandidate.getParent().resolve(this.destinationFileName);
+      actual = this.getTarget(from, v.toString());
       this.copyMarkdown(pages.keySet(), v, from, actual);
+      rendered.add(actual);
 
     }
 
-    if (this.config.generateLatest && actual != null && from != null) {
-      Path latest = PathUtilities
-          .mapSourceTreeToTarget(this.config.rootForMarkdownSource(),
-              this.config.rootForMarkdownTarget().resolve("latest"), from)
-          .getParent()
-          .resolve(this.destinationFileName);
-      this.copyMarkdown(pages.keySet(), v, from, latest);
+    if (!this.newestRendered(pages)) {
+      actual = null;
     }
-
-    if (this.config.generateRedirects) {
-      this.outputRedirect(actual, v, title);
+    this.latestOutput = actual;
+    this.latestVersion = v;
+    if (this.config.redirectStubs()) {
+      final Path redirect = this.outputRedirect(actual, v, title);
+      if (redirect != null) {
+        rendered.add(redirect);
+      }
     }
+    this.outputs = rendered;
   }
 
 }
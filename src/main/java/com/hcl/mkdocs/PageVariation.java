@@ -33,12 +33,12 @@ public class PageVariation {
   public final DocVersion maxVersion;
 
 
-  public PageVariation(final Path source) {
+  public PageVariation(final Path source, final DocumentCache documents) {
     this.source = source;
     this.minVersion = DocVersion.fromPath(source);
     Map<String, Object> yaml = null;
     try {
-      yaml = YamlUtilities.parseYamlFromMarkdown(source);
+      yaml = documents.get(source).frontMatter;
     } catch (final IOException e) {
       e.printStackTrace();
     }
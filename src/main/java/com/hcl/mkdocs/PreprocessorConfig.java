@@ -17,8 +17,13 @@
 package com.hcl.mkdocs;
 
 import java.io.IOException;
+import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -56,6 +61,35 @@ public class PreprocessorConfig {
   public static final String DOC_ISLATEST = "isLatest";
   public static final String GENERATE_REDIRECTS = "generate_redirects";
   public static final String GENERATE_LATEST = "generate_latest";
+  public static final String PARALLELISM = "parallelism";
+  public static final String INCREMENTAL = "incremental";
+  public static final String DOCUMENT_CACHE_SIZE = "document_cache_size";
+  public static final String PRESERVE_FRONT_MATTER = "preserve_front_matter";
+  public static final String COPY_STRATEGY = "copy_strategy";
+  public static final String WATCH_QUIET_PERIOD = "watch_quiet_period";
+  public static final String WATCH_MAX_DELAY = "watch_max_delay";
+  public static final String WATCH_IGNORE = "watch_ignore";
+  public static final String METRICS_FILE = "metrics_file";
+  public static final String METRICS_TOP = "metrics_top";
+  public static final String LOG_LEVEL = "log_level";
+  public static final String PRUNE_OUTPUTS = "prune_outputs";
+  public static final String VERSION_ALIASES = "version_aliases";
+  public static final String ALIAS_STRATEGY = "alias_strategy";
+  public static final String REDIRECT_RULES = "redirect_rules";
+  public static final String REDIRECT_RULES_FILE = "redirect_rules_file";
+  public static final String REDIRECT_STUBS = "redirect_stubs";
+  public static final String VERSION_SITES = "version_sites";
+  public static final String BUILD_SITES = "build_sites";
+  public static final String SITE_COMMAND = "site_command";
+  public static final String SITE_PARALLELISM = "site_parallelism";
+  public static final String RENDER_VERSIONS = "render_versions";
+  public static final String DAEMON_SOCKET = "daemon_socket";
+
+  /**
+   * Temporary files of common editors, not rendered in watch mode
+   */
+  public static final List<String> DEFAULT_WATCH_IGNORE = Arrays.asList("*~", "*.swp", "*.swo",
+      "*.swx", "*.tmp", ".#*", "#*#", "4913", ".DS_Store", "*___jb_tmp___", "*___jb_old___");
 
   public static final String SOURCE_PATH = "source";
   public static final String TARGET_PATH = "target";
@@ -71,6 +105,102 @@ public class PreprocessorConfig {
   public final List<String> extraDirs = Arrays.asList("theme_overrides");
   final boolean generateRedirects;
   final boolean generateLatest;
+  /**
+   * Number of threads rendering pages and menus,
+   * 1 renders sequentially, 0 or less uses all cores
+   */
+  int parallelism = 1;
+  /**
+   * Skip sources unchanged since the last build
+   * recorded in the target directory
+   */
+  boolean incremental = false;
+  /**
+   * Number of parsed markdown sources kept in watch mode
+   */
+  int documentCacheSize = 2000;
+  /**
+   * Keep the authors front-matter text and append the
+   * version keys instead of parsing and dumping it
+   */
+  boolean preserveFrontMatter = false;
+  /**
+   * How files without processing get into the version directories
+   */
+  CopyStrategy copyStrategy = CopyStrategy.COPY;
+  /**
+   * Milliseconds without file events before a batch of changes renders
+   */
+  int watchQuietPeriod = 300;
+  /**
+   * Milliseconds after the first event of a batch when it renders, even
+   * when the file system never gets quiet
+   */
+  int watchMaxDelay = 3000;
+  /**
+   * Glob patterns of file names ignored in watch mode
+   */
+  final List<PathMatcher> watchIgnore = new ArrayList<>();
+  /**
+   * JSON file receiving the BuildMetrics of a build
+   */
+  Path metricsFile;
+  /**
+   * Number of slowest sources listed in the metrics
+   */
+  int metricsTop = 10;
+  /**
+   * What gets printed, warnings are printed at every level
+   */
+  LogLevel logLevel = LogLevel.SUMMARY;
+  /**
+   * Delete target files no source produced in this build
+   */
+  boolean pruneOutputs = false;
+  /**
+   * Extra directories like stable or lts, by the version they point at
+   */
+  final Map<String, String> versionAliases = new LinkedHashMap<>();
+  /**
+   * SYMLINK links alias directories, HARDLINK and COPY fill them with files
+   */
+  CopyStrategy aliasStrategy = CopyStrategy.SYMLINK;
+  /**
+   * Format of the file with all versionless redirects
+   */
+  RedirectFormat redirectRules = RedirectFormat.NONE;
+  /**
+   * Where the redirect rules go, null for the default of the format
+   */
+  Path redirectRulesFile = null;
+  /**
+   * Write a redirect page per page, turned off when rules redirect at the server
+   */
+  boolean redirectStubs = true;
+  /**
+   * Write a mkdocs configuration per version
+   */
+  boolean versionSites = false;
+  /**
+   * Run the site command for every version configuration
+   */
+  boolean buildSites = false;
+  /**
+   * Command building one site, with placeholders for configuration and version
+   */
+  List<String> siteCommand = VersionSites.DEFAULT_COMMAND;
+  /**
+   * Number of site builds running at once, below 1 uses all cores
+   */
+  int siteParallelism = 0;
+  /**
+   * Versions a preview build renders, empty renders all of them
+   */
+  final Set<DocVersion> renderVersions = new TreeSet<>();
+  /**
+   * Unix domain socket the daemon listens on
+   */
+  Path daemonSocket;
 
   public PreprocessorConfig(final Path configFile, final WatchMode watchMode) throws IOException {
     final Map<String, Object> yamlConfig = YamlUtilities.parseYaml(configFile);
@@ -82,6 +212,78 @@ public class PreprocessorConfig {
         Boolean.parseBoolean(String.valueOf(yamlConfig.get(PreprocessorConfig.GENERATE_LATEST)));
     this.watchMode = watchMode;
     this.populateVersions(this.versions, yamlConfig, PreprocessorConfig.DOC_VERSIONS);
+    this.parallelism = PreprocessorConfig.getInt(yamlConfig, PreprocessorConfig.PARALLELISM,
+        this.parallelism);
+    this.incremental =
+        Boolean.parseBoolean(String.valueOf(yamlConfig.get(PreprocessorConfig.INCREMENTAL)));
+    this.documentCacheSize = PreprocessorConfig.getInt(yamlConfig,
+        PreprocessorConfig.DOCUMENT_CACHE_SIZE, this.documentCacheSize);
+    this.preserveFrontMatter = Boolean
+        .parseBoolean(String.valueOf(yamlConfig.get(PreprocessorConfig.PRESERVE_FRONT_MATTER)));
+    this.copyStrategy =
+        CopyStrategy.get(String.valueOf(yamlConfig.get(PreprocessorConfig.COPY_STRATEGY)));
+    this.watchQuietPeriod = PreprocessorConfig.getInt(yamlConfig,
+        PreprocessorConfig.WATCH_QUIET_PERIOD, this.watchQuietPeriod);
+    this.watchMaxDelay = PreprocessorConfig.getInt(yamlConfig,
+        PreprocessorConfig.WATCH_MAX_DELAY, this.watchMaxDelay);
+    final Object ignore = yamlConfig.get(PreprocessorConfig.WATCH_IGNORE);
+    this.setWatchIgnore(ignore instanceof List
+        ? ((List<?>) ignore).stream().map(String::valueOf).toList()
+        : PreprocessorConfig.DEFAULT_WATCH_IGNORE);
+    final Object metrics = yamlConfig.get(PreprocessorConfig.METRICS_FILE);
+    // Relative paths are below the target like the default
+    this.metricsFile = this.target.resolve(metrics == null
+        ? BuildMetrics.METRICS_FILE
+        : String.valueOf(metrics));
+    this.metricsTop =
+        PreprocessorConfig.getInt(yamlConfig, PreprocessorConfig.METRICS_TOP, this.metricsTop);
+    this.logLevel = LogLevel.get(String.valueOf(yamlConfig.get(PreprocessorConfig.LOG_LEVEL)));
+    this.pruneOutputs =
+        Boolean.parseBoolean(String.valueOf(yamlConfig.get(PreprocessorConfig.PRUNE_OUTPUTS)));
+    final Object aliases = yamlConfig.get(PreprocessorConfig.VERSION_ALIASES);
+    if (aliases instanceof Map) {
+      ((Map<?, ?>) aliases)
+          .forEach((k, v) -> this.versionAliases.put(String.valueOf(k), String.valueOf(v)));
+    } else if (aliases != null) {
+      BuildLog.warn("%s is not a map in config.yml%n", PreprocessorConfig.VERSION_ALIASES);
+    }
+    this.redirectRules =
+        RedirectFormat.get(String.valueOf(yamlConfig.get(PreprocessorConfig.REDIRECT_RULES)));
+    if (yamlConfig.containsKey(PreprocessorConfig.REDIRECT_RULES_FILE)) {
+      this.redirectRulesFile =
+          Path.of(String.valueOf(yamlConfig.get(PreprocessorConfig.REDIRECT_RULES_FILE)));
+    }
+    if (yamlConfig.containsKey(PreprocessorConfig.REDIRECT_STUBS)) {
+      this.redirectStubs = Boolean
+          .parseBoolean(String.valueOf(yamlConfig.get(PreprocessorConfig.REDIRECT_STUBS)));
+    }
+    this.buildSites =
+        Boolean.parseBoolean(String.valueOf(yamlConfig.get(PreprocessorConfig.BUILD_SITES)));
+    this.versionSites = this.buildSites
+        || Boolean.parseBoolean(String.valueOf(yamlConfig.get(PreprocessorConfig.VERSION_SITES)));
+    final Object command = yamlConfig.get(PreprocessorConfig.SITE_COMMAND);
+    if (command instanceof List && !((List<?>) command).isEmpty()) {
+      this.siteCommand = ((List<?>) command).stream().map(String::valueOf).toList();
+    } else if (command != null) {
+      BuildLog.warn("%s is not an Array in config.yml%n", PreprocessorConfig.SITE_COMMAND);
+    }
+    this.siteParallelism = PreprocessorConfig.getInt(yamlConfig,
+        PreprocessorConfig.SITE_PARALLELISM, this.siteParallelism);
+    final Object socket = yamlConfig.get(PreprocessorConfig.DAEMON_SOCKET);
+    this.daemonSocket = socket == null
+        ? this.target.resolve(BuildDaemon.SOCKET_FILE)
+        : Path.of(String.valueOf(socket));
+    final Object render = yamlConfig.get(PreprocessorConfig.RENDER_VERSIONS);
+    if (render instanceof List) {
+      this.setRenderVersions(((List<?>) render).stream().map(String::valueOf).toList());
+    } else if (render != null) {
+      this.setRenderVersions(Arrays.asList(String.valueOf(render).split(",")));
+    }
+    if (yamlConfig.containsKey(PreprocessorConfig.ALIAS_STRATEGY)) {
+      final CopyStrategy strategy = CopyStrategy
+          .get(String.valueOf(yamlConfig.get(PreprocessorConfig.ALIAS_STRATEGY)));
+      this.aliasStrategy = CopyStrategy.REFLINK.equals(strategy) ? CopyStrategy.COPY : strategy;
+    }
   }
 
   public PreprocessorConfig(final Path source, final Path target,
@@ -93,13 +295,129 @@ public class PreprocessorConfig {
     this.generateLatest = generateLatest;
     versionStrings.forEach(s -> this.versions.add(DocVersion.fromString(s)));
     this.watchMode = watchMode;
+    this.setWatchIgnore(PreprocessorConfig.DEFAULT_WATCH_IGNORE);
+    this.metricsFile = target.resolve(BuildMetrics.METRICS_FILE);
+    this.daemonSocket = target.resolve(BuildDaemon.SOCKET_FILE);
+  }
+
+  void setWatchIgnore(final List<String> patterns) {
+    this.watchIgnore.clear();
+    patterns.forEach(
+        p -> this.watchIgnore.add(FileSystems.getDefault().getPathMatcher("glob:" + p)));
+  }
+
+  /**
+   * @param changed Path reported by the watcher
+   * @return true if the file name matches one of the ignore patterns
+   */
+  public boolean isIgnoredInWatch(final Path changed) {
+    final Path fileName = changed.getFileName();
+    return fileName != null && this.watchIgnore.stream().anyMatch(m -> m.matches(fileName));
+  }
+
+  static int getInt(final Map<String, Object> sourceMap, final String key, final int fallback) {
+    if (!sourceMap.containsKey(key)) {
+      return fallback;
+    }
+    try {
+      return Integer.parseInt(String.valueOf(sourceMap.get(key)).trim());
+    } catch (final NumberFormatException e) {
+      BuildLog.warn("%s is not a number in config.yml, using %s%n", key, fallback);
+      return fallback;
+    }
+  }
+
+  /**
+   * Settings that change the output of every file. A build
+   * with a different fingerprint can't reuse earlier results
+   *
+   * @return String describing versions and flags
+   */
+  public String fingerprint() {
+    return String.format("versions=%s;render=%s;redirects=%s;latest=%s;preserve=%s;copy=%s",
+        this.versions, this.renderVersions, this.redirectStubs(), this.generateLatest,
+        this.preserveFrontMatter, this.copyStrategy);
+  }
+
+  /**
+   * @return true when every page gets a versionless redirect page
+   */
+  public boolean redirectStubs() {
+    return this.generateRedirects && this.redirectStubs;
+  }
+
+  /**
+   * @return Path of the redirect rules file, null without rules
+   */
+  public Path redirectRulesFile() {
+    if (!this.generateRedirects || RedirectFormat.NONE.equals(this.redirectRules)) {
+      return null;
+    }
+    if (this.redirectRulesFile != null) {
+      return this.redirectRulesFile;
+    }
+    return this.redirectRules.inSite
+        ? this.rootForMarkdownTarget().resolve(this.redirectRules.fileName)
+        : this.target.resolve(this.redirectRules.fileName);
+  }
+
+  /**
+   * Number of render threads to use, resolving
+   * values below 1 to the available processors
+   *
+   * @return int thread count
+   */
+  public int renderThreads() {
+    return this.parallelism > 0
+        ? this.parallelism
+        : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Restricts rendering to some versions, front-matter keeps listing
+   * all of them. latest stands for the newest version
+   *
+   * @param versionStrings versions to render, empty renders all
+   */
+  public void setRenderVersions(final List<String> versionStrings) {
+    this.renderVersions.clear();
+    for (final String s : versionStrings) {
+      final String name = s.trim();
+      if (name.isEmpty()) {
+        continue;
+      }
+      final DocVersion v = VersionAliases.LATEST.equalsIgnoreCase(name) && !this.versions.isEmpty()
+          ? Collections.max(this.versions)
+          : DocVersion.fromString(name);
+      if (this.versions.contains(v)) {
+        this.renderVersions.add(v);
+      } else {
+        BuildLog.warn("%s is not one of the versions, not rendered%n", name);
+      }
+    }
+  }
+
+  /**
+   * @return versions to render in this build
+   */
+  public Set<DocVersion> renderedVersions() {
+    return this.renderVersions.isEmpty() ? this.versions : this.renderVersions;
+  }
+
+  /**
+   * @return number of site builds running at once
+   */
+  public int siteThreads() {
+    return this.siteParallelism > 0
+        ? this.siteParallelism
+        : Runtime.getRuntime().availableProcessors();
   }
 
   void populateVersions(final Set<DocVersion> docSet, final Map<String, Object> sourceMap,
       final String key) {
 
     if (!sourceMap.containsKey(key)) {
-      System.err.printf("No version array %s found in config.yml%n",
+      BuildLog.warn("No version array %s found in config.yml%n",
           PreprocessorConfig.DOC_VERSIONS);
       docSet.add(DocVersion.fromString("v1"));
       return;
@@ -110,7 +428,7 @@ public class PreprocessorConfig {
       final List<?> list = (List<?>) o;
       list.forEach(l -> docSet.add(DocVersion.fromString(String.valueOf(l))));
     } else {
-      System.err.printf("%s is not an Array in config.yml%n", PreprocessorConfig.DOC_VERSIONS);
+      BuildLog.warn("%s is not an Array in config.yml%n", PreprocessorConfig.DOC_VERSIONS);
       docSet.add(DocVersion.fromString("v1"));
     }
 
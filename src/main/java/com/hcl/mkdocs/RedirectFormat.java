@@ -0,0 +1,122 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * File format for the versionless to latest redirect rules
+ */
+public enum RedirectFormat {
+
+  /**
+   * No rules file, only the redirect stub pages
+   */
+  NONE("", false),
+
+  /**
+   * JSON object mapping versionless to versioned URLs
+   */
+  JSON("redirects.json", false),
+
+  /**
+   * nginx map block, include it in the http context and use
+   * <code>if ($mkdocs_redirect) { return 301 $mkdocs_redirect; }</code>
+   */
+  NGINX("redirects.nginx.conf", false),
+
+  /**
+   * _redirects file as used by Netlify and Cloudflare Pages,
+   * written into the docs directory so it ends up in the site root
+   */
+  NETLIFY("_redirects", true);
+
+  /**
+   * Default file name
+   */
+  public final String fileName;
+  /**
+   * true when the file belongs into the published site
+   */
+  public final boolean inSite;
+
+  RedirectFormat(final String fileName, final boolean inSite) {
+    this.fileName = fileName;
+    this.inSite = inSite;
+  }
+
+  /**
+   * Get the redirect format from the incoming string,
+   * anything unknown results in NONE
+   *
+   * @param incoming String to check
+   * @return RedirectFormat
+   */
+  public static RedirectFormat get(final String incoming) {
+    final String incomingLower = String.valueOf(incoming).toLowerCase();
+    if (incomingLower.startsWith("j")) {
+      return JSON;
+    }
+    if (incomingLower.startsWith("ng")) {
+      return NGINX;
+    }
+    if (incomingLower.startsWith("ne") || incomingLower.startsWith("_")
+        || incomingLower.startsWith("c")) {
+      return NETLIFY;
+    }
+    return NONE;
+  }
+
+  /**
+   * @param rules versionless URL to versioned URL, sorted
+   * @return file content
+   */
+  public String render(final Map<String, String> rules) {
+    final String nl = System.lineSeparator();
+    final StringBuilder b = new StringBuilder();
+    switch (this) {
+      case JSON:
+        b.append('{').append(nl);
+        final int[] left = {rules.size()};
+        rules.forEach((from, to) -> b.append("  ").append(BuildMetrics.quote(from)).append(": ")
+            .append(BuildMetrics.quote(to)).append(--left[0] > 0 ? "," : "").append(nl));
+        b.append('}').append(nl);
+        break;
+      case NGINX:
+        b.append("map $uri $mkdocs_redirect {").append(nl);
+        b.append("    default \"\";").append(nl);
+        // $uri is decoded, the redirect target stays encoded
+        rules.forEach((from, to) -> b.append("    ")
+            .append(RedirectFormat.nginxQuote(URI.create(from).getPath()))
+            .append(' ').append(RedirectFormat.nginxQuote(to)).append(';').append(nl));
+        b.append('}').append(nl);
+        break;
+      case NETLIFY:
+        rules.forEach((from, to) -> b.append(from).append(' ').append(to).append(" 301")
+            .append(nl));
+        break;
+      default:
+        break;
+    }
+    return b.toString();
+  }
+
+  static String nginxQuote(final String url) {
+    return "\"" + url.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+}
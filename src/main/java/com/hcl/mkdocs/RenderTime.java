@@ -31,5 +31,11 @@ public enum RenderTime {
   /**
    * Render the file immediately, used in watch mode
    */
-  NOW
+  NOW,
+
+  /**
+   * Render the file once the current batch of
+   * changes is complete, used in watch mode
+   */
+  BATCH
 }
@@ -18,13 +18,29 @@ package com.hcl.mkdocs;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class SiteStructure {
 
@@ -33,23 +49,59 @@ public class SiteStructure {
   }
 
   final PreprocessorConfig config;
+  final BuildManifest manifest;
+  final DocumentCache documents;
+  final DependencyGraph dependencies = new DependencyGraph();
+  final BuildMetrics metrics;
+  final VersionAliases aliases;
   final Map<Path, PageStructure> pages = new HashMap<>();
 
   final Map<Path, MenuStructure> menus = new HashMap<>();
 
+  /**
+   * Structures waiting for the end of a batch of changes
+   */
+  final Set<PageStructure> pendingPages = new LinkedHashSet<>();
+  final Set<MenuStructure> pendingMenus = new LinkedHashSet<>();
+  final Set<Path> pendingOutputs = new HashSet<>();
+  /**
+   * Outputs written or deleted since the aliases got updated
+   */
+  final Set<Path> changedOutputs = ConcurrentHashMap.newKeySet();
+  boolean pendingLanding = false;
+  SourceSnapshot snapshot = SourceSnapshot.EMPTY;
+
   public SiteStructure(final PreprocessorConfig config) {
     this.config = config;
+    this.manifest = new BuildManifest(config);
+    this.metrics = new BuildMetrics(config);
+    this.documents = new DocumentCache(config, this.metrics);
+    this.aliases = new VersionAliases(config);
+  }
+
+  /**
+   * Lets all stages use the attributes of one scan,
+   * SourceSnapshot.EMPTY goes back to reading from disk
+   *
+   * @param snapshot SourceSnapshot of the current build
+   */
+  public void useSnapshot(final SourceSnapshot snapshot) {
+    this.snapshot = snapshot;
+    this.manifest.snapshot = snapshot;
+    this.documents.snapshot = snapshot;
   }
 
   public void addMenu(final Path incoming, final RenderTime renderTime) {
     final Path parent = incoming.getParent();
     final MenuStructure ms = this.menus.containsKey(parent)
         ? this.menus.get(parent)
-        : new MenuStructure(parent, this.config);
+        : new MenuStructure(parent, this.config, this.dependencies, this.metrics);
     ms.addMenu(incoming);
     this.menus.put(parent, ms);
     if (RenderTime.NOW.equals(renderTime)) {
-      ms.renderOutput();
+      this.renderMenu(ms);
+    } else if (RenderTime.BATCH.equals(renderTime)) {
+      this.pendingMenus.add(ms);
     }
   }
 
@@ -58,14 +110,259 @@ public class SiteStructure {
     final Path versionFree = this.getVersionFree(incoming, version);
     final PageStructure ps = this.pages.containsKey(versionFree)
         ? this.pages.get(versionFree)
-        : new PageStructure(versionFree, this.config);
+        : new PageStructure(versionFree, this.config, this.documents);
     ps.addPath(version, incoming);
     this.pages.put(versionFree, ps);
     if (RenderTime.NOW.equals(renderTime)) {
+      this.dependencies.menusAffectedBy(this.renderPage(ps)).forEach(this::renderMenu);
+    } else if (RenderTime.BATCH.equals(renderTime)) {
+      this.pendingPages.add(ps);
+    }
+  }
+
+  /**
+   * Records the target files of a 1:1 copy, new files might
+   * make links in menus valid
+   *
+   * @param incoming Path source file
+   * @param outputs Collection of written target files
+   * @param renderTime When the file got copied
+   */
+  public void addCopy(final Path incoming, final Collection<Path> outputs,
+      final RenderTime renderTime) {
+    final Set<Path> changed = this.dependencies.setOutputs(incoming, outputs);
+    this.changedOutputs.addAll(outputs);
+    if (RenderTime.NOW.equals(renderTime)) {
+      this.dependencies.menusAffectedBy(changed).forEach(this::renderMenu);
+    } else if (RenderTime.BATCH.equals(renderTime)) {
+      this.pendingOutputs.addAll(changed);
+    }
+  }
+
+  /**
+   * Renders a page and records its outputs. Outputs the page
+   * no longer produces, e.g. after deleting a variation, get deleted
+   *
+   * @param ps PageStructure
+   * @return outputs that appeared or disappeared
+   */
+  Set<Path> renderPage(final PageStructure ps) {
+    final long start = System.nanoTime();
+    final Set<Path> before = new HashSet<>(this.dependencies.outputsOf(ps.origin));
+    try {
       ps.renderOutput();
+    } catch (final RuntimeException e) {
+      ps.sources().forEach(this.metrics::failed);
+      throw e;
+    }
+    final Set<Path> changed = this.dependencies.setOutputs(ps.origin, ps.outputs);
+    this.changedOutputs.addAll(ps.outputs);
+    changed.stream().filter(before::contains).forEach(this::deleteOutput);
+    this.metrics.source(ps.origin, start);
+    return changed;
+  }
+
+  /**
+   * Renders a menu and records the links it checked
+   *
+   * @param ms MenuStructure
+   */
+  void renderMenu(final MenuStructure ms) {
+    final long start = System.nanoTime();
+    final Set<Path> before = ms.outputs;
+    try {
+      ms.renderOutput();
+    } catch (final RuntimeException e) {
+      ms.sources().forEach(this.metrics::failed);
+      throw e;
+    }
+    this.dependencies.setLinks(ms, ms.linkedPaths);
+    this.changedOutputs.addAll(ms.outputs);
+    before.stream().filter(p -> !ms.outputs.contains(p)).forEach(this::deleteOutput);
+    this.metrics.source(ms.parent.resolve(PreprocessorConfig.PAGES), start);
+  }
+
+  void deleteOutput(final Path output) {
+    try {
+      if (Files.deleteIfExists(output)) {
+        BuildLog.file("DELETE %s%n", output);
+        this.changedOutputs.add(output);
+        if (this.config.pruneOutputs) {
+          this.deleteEmptyParents(output);
+        }
+      }
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Removes directories left empty by a deleted output, up to the target docs directory
+   *
+   * @param output Path of the deleted file
+   */
+  void deleteEmptyParents(final Path output) throws IOException {
+    final Path root = this.config.rootForMarkdownTarget().normalize();
+    for (Path dir = output.normalize().getParent(); dir != null && dir.startsWith(root)
+        && !dir.equals(root); dir = dir.getParent()) {
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+        if (entries.iterator().hasNext()) {
+          return;
+        }
+      }
+      Files.delete(dir);
+    }
+  }
+
+  /**
+   * Deletes files in the target docs and extra directories that no
+   * source produced in this build, e.g. renamed pages, dropped variants
+   * or retired versions. Directories left empty go as well. Versions
+   * left out of render_versions keep their outputs from earlier builds
+   *
+   * @return number of deleted files
+   * @throws IOException when walking the target fails
+   */
+  public int pruneStale() throws IOException {
+    final Set<Path> aliasPaths = this.aliases.paths();
+    final Set<Path> skipped = new HashSet<>(aliasPaths);
+    this.config.versions.stream()
+        .filter(v -> !this.config.renderedVersions().contains(v))
+        .forEach(v -> skipped.add(
+            this.config.rootForMarkdownTarget().resolve(v.toString()).normalize()));
+    final Set<Path> menuOutputs = new HashSet<>();
+    this.menus.values().forEach(ms -> ms.outputs.forEach(p -> menuOutputs.add(p.normalize())));
+    final List<Path> roots = new ArrayList<>();
+    roots.add(this.config.rootForMarkdownTarget());
+    this.config.extraDirs.forEach(d -> roots.add(this.config.target.resolve(d)));
+    final AtomicInteger deleted = new AtomicInteger();
+    for (final Path root : roots) {
+      if (!Files.isDirectory(root)) {
+        continue;
+      }
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+          return skipped.contains(dir.normalize())
+              ? FileVisitResult.SKIP_SUBTREE
+              : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+            throws IOException {
+          final Path p = file.normalize();
+          if (!SiteStructure.this.dependencies.exists(p) && !menuOutputs.contains(p)
+              && !aliasPaths.contains(p)) {
+            Files.delete(file);
+            BuildLog.file("PRUNE %s%n", file);
+            SiteStructure.this.changedOutputs.add(p);
+            deleted.incrementAndGet();
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(final Path dir, final IOException exc)
+            throws IOException {
+          if (!dir.equals(root)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+              if (!entries.iterator().hasNext()) {
+                Files.delete(dir);
+              }
+            }
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    }
+    if (deleted.get() > 0) {
+      BuildLog.info("Removed %s stale output(s)%n", deleted.get());
+      this.updateAliases();
+    }
+    return deleted.get();
+  }
+
+  /**
+   * Handles a deleted markdown file, the page renders again
+   * from its remaining variations or its outputs get deleted
+   *
+   * @param incoming Path of the deleted file
+   */
+  public void removePage(final Path incoming) {
+    final DocVersion version = DocVersion.fromPath(incoming);
+    final PageStructure ps = this.pages.get(this.getVersionFree(incoming, version));
+    if (ps == null) {
+      return;
+    }
+    ps.removePath(version);
+    if (ps.options.isEmpty()) {
+      this.pages.remove(ps.origin);
+      this.pendingPages.remove(ps);
+      this.removeOutputs(ps.origin);
+    } else {
+      this.pendingPages.add(ps);
+    }
+  }
+
+  /**
+   * Handles a deleted .pages file like removePage
+   *
+   * @param incoming Path of the deleted file
+   */
+  public void removeMenu(final Path incoming) {
+    final MenuStructure ms = this.menus.get(incoming.getParent());
+    if (ms == null) {
+      return;
+    }
+    ms.removeMenu(incoming);
+    if (ms.sources().isEmpty()) {
+      this.menus.remove(ms.parent);
+      this.pendingMenus.remove(ms);
+      this.dependencies.setLinks(ms, Collections.emptySet());
+      ms.outputs.forEach(this::deleteOutput);
+    } else {
+      this.pendingMenus.add(ms);
+    }
+  }
+
+  /**
+   * Deletes the rendered landing file of a deleted source
+   *
+   * @param incoming Path of the deleted file
+   */
+  public void removeLanding(final Path incoming) {
+    this.deleteOutput(
+        this.config.target.resolve(this.config.source.relativize(incoming)));
+    this.queueRootPage(incoming);
+  }
+
+  /**
+   * The root page writes the versionless index.md only while there
+   * is no landing page, it renders again when the landing page comes or goes
+   *
+   * @param incoming Path of the landing file
+   */
+  void queueRootPage(final Path incoming) {
+    final PageStructure root =
+        this.pages.get(this.config.rootForMarkdownSource().resolve(PreprocessorConfig.INDEX));
+    if (root != null && PreprocessorConfig.INDEX.equals(incoming.getFileName().toString())) {
+      this.pendingPages.add(root);
     }
   }
 
+  /**
+   * Deletes everything a source produced, menus linking
+   * to the outputs render with the next batch
+   *
+   * @param source Path of the deleted source
+   */
+  public void removeOutputs(final Path source) {
+    final Set<Path> outputs = new HashSet<>(this.dependencies.outputsOf(source));
+    outputs.forEach(this::deleteOutput);
+    this.pendingOutputs.addAll(this.dependencies.setOutputs(source, Collections.emptySet()));
+  }
+
   Path getVersionFree(final Path incoming, final DocVersion version) {
     final String replace = String.format(".%s.", version);
     if (!incoming.toString().contains(replace)) {
@@ -74,6 +371,103 @@ public class SiteStructure {
     return Path.of(incoming.toString().replace(replace, "."));
   }
 
+  /**
+   * Renders all structures using the executor and waits until
+   * every one of them is done. The pool size limits how many
+   * files are open at the same time. Like the sequential render
+   * the first failure gets rethrown, once all of them finished
+   *
+   * @param <T> PageStructure or MenuStructure
+   * @param executor ExecutorService with a fixed number of threads
+   * @param structures Collection to render
+   * @param renderer the render method to call
+   */
+  static <T> void renderInParallel(final ExecutorService executor,
+      final Collection<T> structures, final Consumer<T> renderer) {
+    final List<Future<?>> pending = new ArrayList<>(structures.size());
+    structures.forEach(s -> pending.add(executor.submit(() -> renderer.accept(s))));
+    Throwable failure = null;
+    for (final Future<?> f : pending) {
+      try {
+        f.get();
+      } catch (final ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure != null) {
+      throw new IllegalStateException(failure);
+    }
+  }
+
+  /**
+   * The landing index.md and .pages are rendered with
+   * links to the latest version instead of being copied
+   *
+   * @param incoming Path source file
+   * @return true if it is one of the landing files
+   */
+  boolean isLanding(final Path incoming) {
+    final Path docs = this.config.source.resolve(PreprocessorConfig.DOCS_PATH);
+    return incoming.equals(docs.resolve(PreprocessorConfig.INDEX))
+        || incoming.equals(docs.resolve(PreprocessorConfig.PAGES));
+  }
+
+  public void addLanding(final Path incoming, final RenderTime renderTime) {
+    if (RenderTime.NOW.equals(renderTime)) {
+      this.renderLanding();
+    } else if (RenderTime.BATCH.equals(renderTime)) {
+      this.pendingLanding = true;
+      this.queueRootPage(incoming);
+    }
+  }
+
+  /**
+   * Renders everything added with RenderTime.BATCH, menus after pages
+   * like in renderOutput. Menus linking to a page or copy that appeared
+   * or disappeared render again, other menus stay untouched
+   */
+  public void renderPending() {
+    this.pendingPages.forEach(ps -> this.pendingOutputs.addAll(this.renderPage(ps)));
+    this.pendingMenus.addAll(this.dependencies.menusAffectedBy(this.pendingOutputs));
+    this.pendingMenus.forEach(this::renderMenu);
+    if (this.pendingLanding) {
+      this.renderLanding();
+    }
+    this.writeRedirectRules();
+    if (!this.changedOutputs.isEmpty()) {
+      // Replaced files no longer share the inode with the linked tree
+      this.updateAliases();
+    }
+    BuildLog.info("Rendered %s page(s), %s menu(s)%s%n", this.pendingPages.size(),
+        this.pendingMenus.size(), this.pendingLanding ? " and the landing page" : "");
+    this.pendingPages.clear();
+    this.pendingMenus.clear();
+    this.pendingOutputs.clear();
+    this.pendingLanding = false;
+    BuildLog.flush();
+  }
+
+  void renderLanding() {
+    this.renderLandingPage();
+    this.renderLandingMenu();
+    final Path docs = this.config.source.resolve(PreprocessorConfig.DOCS_PATH);
+    for (final String landing : List.of(PreprocessorConfig.INDEX, PreprocessorConfig.PAGES)) {
+      final Path source = docs.resolve(landing);
+      this.dependencies.setOutputs(source, this.snapshot.isFile(source)
+          ? List.of(this.config.target.resolve(PreprocessorConfig.DOCS_PATH).resolve(landing))
+          : Collections.emptyList());
+    }
+  }
+
   /**
    * Outputs the [projectDir]/docs/ .pages
    * replaces current/ with lastVersion/
@@ -94,8 +488,7 @@ public class SiteStructure {
         final String current = String.format("%s/", PreprocessorConfig.DOC_CURRENT_PATH);
         final String latest = String.format("%s/", SiteStructure.getLatest(this.config.versions));
         final String landingContentTarget = landingContentSource.replace(current, latest);
-        Files.writeString(landingTargetCandidate, landingContentTarget, StandardCharsets.UTF_8,
-            StandardOpenOption.CREATE);
+        this.writeLanding(landingTargetCandidate, landingContentTarget);
       } catch (final IOException e) {
         e.printStackTrace();
       }
@@ -123,22 +516,162 @@ public class SiteStructure {
         final String current = String.format("(%s/", PreprocessorConfig.DOC_CURRENT_PATH);
         final String latest = String.format("(%s/", SiteStructure.getLatest(this.config.versions));
         final String landingContentTarget = landingContentSource.replace(current, latest);
-        Files.writeString(landingTargetCandidate, landingContentTarget, StandardCharsets.UTF_8,
-            StandardOpenOption.CREATE);
+        this.writeLanding(landingTargetCandidate, landingContentTarget);
       } catch (final IOException e) {
         e.printStackTrace();
       }
     }
   }
 
+  void writeLanding(final Path target, final String content) throws IOException {
+    final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    if (OutputFiles.write(target, bytes)) {
+      this.metrics.written(bytes.length);
+    }
+    this.metrics.countOutput("landing");
+  }
+
+  /**
+   * Writes the versionless to newest version URL of every page into
+   * one rules file, a server or CDN redirects without a stub page
+   */
+  void writeRedirectRules() {
+    final Path file = this.config.redirectRulesFile();
+    if (file == null) {
+      return;
+    }
+    final Map<String, String> rules = new TreeMap<>();
+    this.pages.values().forEach(ps -> {
+      final String from = ps.redirectFrom();
+      if (from != null) {
+        rules.put(from, ps.redirectTo());
+      }
+    });
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      final byte[] bytes =
+          this.config.redirectRules.render(rules).getBytes(StandardCharsets.UTF_8);
+      if (OutputFiles.write(file, bytes)) {
+        this.metrics.written(bytes.length);
+        BuildLog.info("%s redirect rule(s) written to %s%n", rules.size(), file);
+      }
+      this.metrics.countOutput("redirect_rules");
+      this.dependencies.setOutputs(file, List.of(file));
+    } catch (final IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Pages and menus whose sources changed since the last build, all of
+   * them when the build isn't incremental. A menu is affected by any
+   * change to a page below its directory since it prunes missing links
+   *
+   * @param changedPages receives the pages to render
+   * @param changedMenus receives the menus to render
+   */
+  void collectChanges(final Collection<PageStructure> changedPages,
+      final Collection<MenuStructure> changedMenus) {
+    if (!this.manifest.enabled) {
+      changedPages.addAll(this.pages.values());
+      changedMenus.addAll(this.menus.values());
+      return;
+    }
+    final Set<Path> changedSources = new HashSet<>();
+    this.pages.values().forEach(ps -> {
+      if (this.manifest.allUnchanged(ps.sources())) {
+        // Still in the target, menus need to know about it
+        this.dependencies.setOutputs(ps.origin, ps.plannedOutputs());
+      } else {
+        changedPages.add(ps);
+        changedSources.add(ps.origin);
+      }
+    });
+    this.menus.values().forEach(ms -> {
+      if (this.manifest.allUnchanged(ms.sources())) {
+        ms.outputs = ms.plannedOutputs();
+        if (!WatchMode.NONE.equals(this.config.watchMode)) {
+          // Later changes to linked pages render the menu again
+          this.dependencies.setLinks(ms, ms.plannedLinks());
+        }
+      } else {
+        changedMenus.add(ms);
+      }
+    });
+
+    // Deleted variants change which source renders for a version
+    for (final Path removed : this.manifest.removedSources()) {
+      changedSources.add(removed);
+      if (removed.getFileName().toString().endsWith(".md")) {
+        final PageStructure ps =
+            this.pages.get(this.getVersionFree(removed, DocVersion.fromPath(removed)));
+        if (ps != null && !changedPages.contains(ps)) {
+          changedPages.add(ps);
+        }
+      }
+    }
+
+    this.menus.values().stream()
+        .filter(ms -> !changedMenus.contains(ms))
+        .filter(ms -> changedSources.stream().anyMatch(p -> p.startsWith(ms.parent)))
+        .forEach(changedMenus::add);
+
+    BuildLog.info("Incremental build: %s of %s pages, %s of %s menus changed%n",
+        changedPages.size(), this.pages.size(), changedMenus.size(), this.menus.size());
+  }
+
   public void renderOutput() {
-    this.pages.values().forEach(PageStructure::renderOutput);
-    // Menu stucture (.pages files) needs to render after pages
-    // to eliminate non exisiting files in version
-    this.menus.values().forEach(MenuStructure::renderOutput);
+    final Collection<PageStructure> changedPages = new LinkedHashSet<>();
+    final Collection<MenuStructure> changedMenus = new LinkedHashSet<>();
+    long start = System.nanoTime();
+    this.collectChanges(changedPages, changedMenus);
+    this.metrics.phase(BuildMetrics.CHANGE_DETECTION, start);
+    // Every page and copy is recorded now, rendered or planned
+    this.dependencies.setComplete(true);
+
+    final int threads = this.config.renderThreads();
+    if (threads > 1) {
+      final ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+        start = System.nanoTime();
+        SiteStructure.renderInParallel(executor, changedPages, this::renderPage);
+        this.metrics.phase(BuildMetrics.PAGE_RENDER, start);
+        // All pages are written when renderInParallel returns, menus can
+        // safely check for their linked pages now
+        start = System.nanoTime();
+        SiteStructure.renderInParallel(executor, changedMenus, this::renderMenu);
+        this.metrics.phase(BuildMetrics.MENU_RENDER, start);
+      } finally {
+        executor.shutdown();
+      }
+    } else {
+      start = System.nanoTime();
+      changedPages.forEach(this::renderPage);
+      this.metrics.phase(BuildMetrics.PAGE_RENDER, start);
+      // Menu stucture (.pages files) needs to render after pages
+      // to eliminate non exisiting files in version
+      start = System.nanoTime();
+      changedMenus.forEach(this::renderMenu);
+      this.metrics.phase(BuildMetrics.MENU_RENDER, start);
+    }
     // Finally the landing page index.md and if used landing .pages
-    this.renderLandingPage();
-    this.renderLandingMenu();
+    start = System.nanoTime();
+    this.renderLanding();
+    this.metrics.phase(BuildMetrics.LANDING, start);
+    start = System.nanoTime();
+    this.updateAliases();
+    this.metrics.phase(BuildMetrics.ALIASES, start);
+    this.writeRedirectRules();
+  }
+
+  /**
+   * Alias trees showing the same version as before
+   * only link the outputs changed since the last update
+   */
+  void updateAliases() {
+    final Set<Path> changed = new HashSet<>(this.changedOutputs);
+    this.changedOutputs.removeAll(changed);
+    this.aliases.update(changed);
   }
 
 
@@ -0,0 +1,179 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The source files of one build, collected in a single walk with their
+ * attributes, so later stages don't ask the file system again
+ */
+public class SourceSnapshot {
+
+  /**
+   * How a source file gets processed
+   */
+  public enum Kind {
+    /**
+     * .md below docs/current, rendered per version
+     */
+    MARKDOWN,
+    /**
+     * .pages below docs/current, rendered per version
+     */
+    PAGES,
+    /**
+     * Any other file below docs, copied
+     */
+    ASSET,
+    /**
+     * File in one of the extra directories, copied
+     */
+    EXTRA
+  }
+
+  /**
+   * One regular file of the snapshot
+   */
+  public static final class Entry {
+    public final Path path;
+    public final BasicFileAttributes attributes;
+    public final Kind kind;
+
+    Entry(final Path path, final BasicFileAttributes attributes, final Kind kind) {
+      this.path = path;
+      this.attributes = attributes;
+      this.kind = kind;
+    }
+  }
+
+  /**
+   * No files, every lookup goes to the file system
+   */
+  public static final SourceSnapshot EMPTY = new SourceSnapshot(Collections.emptyMap());
+
+  /**
+   * Walks the docs directory and the extra directories once
+   *
+   * @param config PreprocessorConfig with source and extra directories
+   * @return SourceSnapshot in walk order
+   * @throws IOException when the walk fails
+   */
+  public static SourceSnapshot scan(final PreprocessorConfig config) throws IOException {
+    final Path docs = config.source.resolve(PreprocessorConfig.DOCS_PATH);
+    final Path current = config.rootForMarkdownSource();
+    final List<Path> extras = new ArrayList<>();
+    config.extraDirs.forEach(dir -> extras.add(config.source.resolve(dir)));
+    final List<Path> roots = new ArrayList<>(extras);
+    roots.add(docs);
+
+    final Map<Path, Entry> entries = new LinkedHashMap<>();
+    Files.walkFileTree(config.source, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+        // Only the roots and the directories leading to them
+        return roots.stream().anyMatch(root -> dir.startsWith(root) || root.startsWith(dir))
+            ? FileVisitResult.CONTINUE
+            : FileVisitResult.SKIP_SUBTREE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+          throws IOException {
+        BasicFileAttributes actual = attrs;
+        if (attrs.isSymbolicLink()) {
+          // Linked files count like the files they point to
+          actual = Files.readAttributes(file, BasicFileAttributes.class);
+        }
+        if (!actual.isRegularFile()) {
+          return FileVisitResult.CONTINUE;
+        }
+        final String fileName = file.getFileName().toString();
+        Kind kind = null;
+        if (extras.stream().anyMatch(file::startsWith)) {
+          kind = Kind.EXTRA;
+        } else if (file.startsWith(current) && fileName.endsWith(".md")) {
+          kind = Kind.MARKDOWN;
+        } else if (file.startsWith(current) && fileName.endsWith(".pages")) {
+          kind = Kind.PAGES;
+        } else if (file.startsWith(docs)) {
+          kind = Kind.ASSET;
+        }
+        if (kind != null) {
+          entries.put(file, new Entry(file, actual, kind));
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+        BuildLog.warn("Can't read %s: %s%n", file, exc.getMessage());
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return new SourceSnapshot(entries);
+  }
+
+  final Map<Path, Entry> entries;
+
+  SourceSnapshot(final Map<Path, Entry> entries) {
+    this.entries = Collections.unmodifiableMap(entries);
+  }
+
+  /**
+   * @param kind Kind of file
+   * @return entries of that kind in walk order
+   */
+  public Stream<Entry> ofKind(final Kind kind) {
+    return this.entries.values().stream().filter(e -> kind.equals(e.kind));
+  }
+
+  /**
+   * @param path Path of a file
+   * @return true when the file is in the snapshot or, outside of it, a regular file
+   */
+  public boolean isFile(final Path path) {
+    return this.entries.containsKey(path) || Files.isRegularFile(path);
+  }
+
+  /**
+   * @param path Path of a file
+   * @return attributes from the snapshot, read from disk for other files
+   * @throws IOException when reading fails
+   */
+  public BasicFileAttributes attributes(final Path path) throws IOException {
+    final Entry entry = this.entries.get(path);
+    return entry == null
+        ? Files.readAttributes(path, BasicFileAttributes.class)
+        : entry.attributes;
+  }
+
+  public int size() {
+    return this.entries.size();
+  }
+}
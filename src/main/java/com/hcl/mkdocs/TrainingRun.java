@@ -0,0 +1,57 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Builds the site of a configuration into a scratch directory, once in
+ * full and once incrementally, so every class a build needs gets loaded.
+ * Started with -XX:ArchiveClassesAtExit=MkDocsVersions.jsa the JVM dumps
+ * these classes into an AppCDS archive, later runs map it with
+ * -XX:SharedArchiveFile=MkDocsVersions.jsa instead of loading and
+ * verifying SnakeYAML and the preprocessor again
+ */
+public class TrainingRun {
+
+  public static final String TRAIN = "train";
+
+  /**
+   * @param configFile Path to the config.yml of the training site
+   * @throws IOException when the build fails
+   */
+  public static void run(final Path configFile) throws IOException {
+    final PreprocessorConfig config = new PreprocessorConfig(configFile, WatchMode.NONE);
+    final List<String> versions = config.versions.stream().map(DocVersion::toString).toList();
+    final Path scratch = Files.createTempDirectory("mkdocs-training");
+    try {
+      for (int run = 0; run < 2; run++) {
+        final MkDocsPreprocessor p = new MkDocsPreprocessor(config.source, scratch, versions,
+            config.generateRedirects, config.generateLatest, WatchMode.NONE);
+        p.config.incremental = true;
+        p.config.logLevel = config.logLevel;
+        p.processFiles();
+      }
+    } finally {
+      VersionAliases.deleteTree(scratch);
+    }
+    BuildLog.info("Training run for %s complete%n", configFile);
+  }
+}
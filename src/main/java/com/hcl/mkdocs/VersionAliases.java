@@ -0,0 +1,262 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Directories like latest, stable or lts in the target docs directory
+ * pointing at a rendered version instead of rendering it again. An alias
+ * is a relative symlink, replaced with an atomic rename when its version
+ * changes. Where symlinks aren't wanted it is a tree of hard links or copies
+ */
+public class VersionAliases {
+
+  public static final String LATEST = "latest";
+
+  final PreprocessorConfig config;
+
+  /**
+   * Trees linked by this process and the version they show
+   */
+  final Map<Path, DocVersion> linked = new HashMap<>();
+
+  public VersionAliases(final PreprocessorConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * latest when generate_latest is set, then the configured aliases
+   *
+   * @return Map of alias name to the version it points at
+   */
+  public Map<String, DocVersion> resolve() {
+    final Map<String, DocVersion> result = new LinkedHashMap<>();
+    if (this.config.generateLatest && !this.config.versions.isEmpty()) {
+      result.put(VersionAliases.LATEST, Collections.max(this.config.versions));
+    }
+    this.config.versionAliases.forEach((alias, version) -> {
+      final DocVersion v = DocVersion.fromString(version);
+      if (alias.isBlank() || alias.contains("/") || alias.startsWith(".")
+          || this.config.versions.stream().anyMatch(c -> c.toString().equals(alias))) {
+        BuildLog.warn("Alias %s is not a valid directory name, skipped%n", alias);
+      } else if (!this.config.versions.contains(v)) {
+        BuildLog.warn("Alias %s points to %s, which isn't rendered, skipped%n", alias, version);
+      } else {
+        result.put(alias, v);
+      }
+    });
+    // A preview only links what it renders
+    result.values().retainAll(this.config.renderedVersions());
+    return result;
+  }
+
+  /**
+   * @return Paths of all alias directories
+   */
+  public Set<Path> paths() {
+    final Set<Path> result = new LinkedHashSet<>();
+    this.resolve().keySet()
+        .forEach(a -> result.add(this.config.rootForMarkdownTarget().resolve(a).normalize()));
+    return result;
+  }
+
+  /**
+   * Points every alias at its version. A symlink that already points
+   * there stays untouched, trees get linked again since rendered
+   * files are replaced and no longer share the linked inode
+   */
+  public void update() {
+    this.update(this.config.rootForMarkdownTarget(), null);
+  }
+
+  /**
+   * Like update, but a tree still showing the same version
+   * only links the changed outputs again instead of the whole version
+   *
+   * @param changed Paths of outputs written or deleted since the last update
+   */
+  public void update(final Collection<Path> changed) {
+    this.update(this.config.rootForMarkdownTarget(), changed);
+  }
+
+  /**
+   * @param root Path of the directory holding versions and aliases
+   */
+  public void update(final Path root) {
+    this.update(root, null);
+  }
+
+  void update(final Path root, final Collection<Path> changed) {
+    this.resolve().forEach((alias, version) -> {
+      final Path link = root.resolve(alias);
+      try {
+        if (CopyStrategy.SYMLINK.equals(this.config.aliasStrategy)) {
+          this.linked.remove(link);
+          this.symlink(link, Path.of(version.toString()));
+        } else if (changed != null && version.equals(this.linked.get(link))
+            && Files.isDirectory(link, LinkOption.NOFOLLOW_LINKS)) {
+          this.relink(link, root.resolve(version.toString()), changed);
+        } else {
+          this.linked.remove(link);
+          this.tree(link, root.resolve(version.toString()));
+          this.linked.put(link, version);
+        }
+      } catch (final IOException | UnsupportedOperationException e) {
+        // Unknown state, the next update links the whole tree
+        this.linked.remove(link);
+        BuildLog.warn("Can't point %s to %s: %s%n", link, version, e.getMessage());
+      }
+    });
+  }
+
+  void symlink(final Path link, final Path version) throws IOException {
+    if (Files.isSymbolicLink(link) && version.equals(Files.readSymbolicLink(link))) {
+      return;
+    }
+    if (Files.isDirectory(link) && !Files.isSymbolicLink(link)) {
+      // Left by an earlier build rendering the alias as directory
+      VersionAliases.deleteTree(link);
+    }
+    final Path temp = VersionAliases.hidden(link, "tmp");
+    Files.createSymbolicLink(temp, version);
+    OutputFiles.replace(temp, link);
+    BuildLog.info("Alias %s points to %s%n", link, version);
+  }
+
+  void tree(final Path link, final Path version) throws IOException {
+    final Path temp = VersionAliases.hidden(link, "tmp");
+    final boolean hardlink = CopyStrategy.HARDLINK.equals(this.config.aliasStrategy);
+    Files.walkFileTree(version, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+          throws IOException {
+        Files.createDirectories(temp.resolve(version.relativize(dir)));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+          throws IOException {
+        final Path destination = temp.resolve(version.relativize(file));
+        if (hardlink) {
+          Files.createLink(destination, file);
+        } else {
+          Files.copy(file, destination, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    // A directory can't be renamed over a non empty one, the old tree
+    // moves aside first and is gone for the moment between both renames
+    Path old = null;
+    if (Files.exists(link) || Files.isSymbolicLink(link)) {
+      old = VersionAliases.hidden(link, "old");
+      Files.move(link, old, StandardCopyOption.ATOMIC_MOVE);
+    }
+    Files.move(temp, link, StandardCopyOption.ATOMIC_MOVE);
+    if (old != null) {
+      VersionAliases.deleteTree(old);
+    }
+  }
+
+  /**
+   * Links changed outputs of the version into the tree, deleted
+   * ones go with the directories they leave empty
+   */
+  void relink(final Path link, final Path version, final Collection<Path> changed)
+      throws IOException {
+    final Path root = version.normalize();
+    final boolean hardlink = CopyStrategy.HARDLINK.equals(this.config.aliasStrategy);
+    for (final Path output : changed) {
+      final Path file = output.normalize();
+      if (!file.startsWith(root) || file.equals(root)) {
+        continue;
+      }
+      final Path destination = link.resolve(root.relativize(file));
+      if (Files.isRegularFile(file)) {
+        Files.createDirectories(destination.getParent());
+        final Path temp = VersionAliases.hidden(destination, "tmp");
+        if (hardlink) {
+          Files.createLink(temp, file);
+        } else {
+          Files.copy(file, temp, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        OutputFiles.replace(temp, destination);
+      } else if (Files.deleteIfExists(destination)) {
+        for (Path dir = destination.getParent(); !dir.equals(link); dir = dir.getParent()) {
+          try (Stream<Path> entries = Files.list(dir)) {
+            if (entries.findAny().isPresent()) {
+              break;
+            }
+          }
+          Files.delete(dir);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return not yet existing hidden Path next to the link, mkdocs skips dot files
+   */
+  static Path hidden(final Path link, final String suffix) {
+    Path result;
+    do {
+      result = link.resolveSibling(String.format(".%s.%x.%s", link.getFileName(),
+          ThreadLocalRandom.current().nextLong(), suffix));
+    } while (Files.exists(result) || Files.isSymbolicLink(result));
+    return result;
+  }
+
+  static void deleteTree(final Path root) throws IOException {
+    if (Files.isSymbolicLink(root)) {
+      Files.delete(root);
+      return;
+    }
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+          throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(final Path dir, final IOException exc)
+          throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Variants of a page or menu ordered by the version they start with.
+ * A version resolves to the variant with the highest start version
+ * at or below it whose range still covers it. Lookups are binary
+ * searches over the packed DocVersion keys, tied keys of saturated
+ * versions compare part by part
+ *
+ * @param <T> PageVariation or Path
+ */
+public class VersionIndex<T> {
+
+  final Function<T, DocVersion> maxVersionOf;
+  long[] keys = new long[2];
+  DocVersion[] versions = new DocVersion[2];
+  Object[] variants = new Object[2];
+  int size = 0;
+
+  /**
+   * @param maxVersionOf last version a variant is valid for
+   */
+  public VersionIndex(final Function<T, DocVersion> maxVersionOf) {
+    this.maxVersionOf = maxVersionOf;
+  }
+
+  /**
+   * @param minVersion first version of the variant
+   * @param variant the variant
+   * @return variant previously stored for the version, null if none
+   */
+  public T put(final DocVersion minVersion, final T variant) {
+    final int pos = this.search(minVersion);
+    if (pos >= 0) {
+      final T previous = this.variantAt(pos);
+      this.variants[pos] = variant;
+      return previous;
+    }
+    final int insert = -pos - 1;
+    if (this.size == this.keys.length) {
+      final int capacity = this.size * 2;
+      this.keys = Arrays.copyOf(this.keys, capacity);
+      this.versions = Arrays.copyOf(this.versions, capacity);
+      this.variants = Arrays.copyOf(this.variants, capacity);
+    }
+    System.arraycopy(this.keys, insert, this.keys, insert + 1, this.size - insert);
+    System.arraycopy(this.versions, insert, this.versions, insert + 1, this.size - insert);
+    System.arraycopy(this.variants, insert, this.variants, insert + 1, this.size - insert);
+    this.keys[insert] = minVersion.key;
+    this.versions[insert] = minVersion;
+    this.variants[insert] = variant;
+    this.size++;
+    return null;
+  }
+
+  public T remove(final DocVersion minVersion) {
+    final int pos = this.search(minVersion);
+    return pos < 0 ? null : this.removeAt(pos);
+  }
+
+  public boolean removeVariant(final T variant) {
+    for (int i = 0; i < this.size; i++) {
+      if (this.variants[i].equals(variant)) {
+        this.removeAt(i);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  T removeAt(final int pos) {
+    final T result = this.variantAt(pos);
+    final int moved = this.size - pos - 1;
+    System.arraycopy(this.keys, pos + 1, this.keys, pos, moved);
+    System.arraycopy(this.versions, pos + 1, this.versions, pos, moved);
+    System.arraycopy(this.variants, pos + 1, this.variants, pos, moved);
+    this.size--;
+    this.versions[this.size] = null;
+    this.variants[this.size] = null;
+    return result;
+  }
+
+  /**
+   * @param version DocVersion to find
+   * @return position like Arrays.binarySearch
+   */
+  int search(final DocVersion version) {
+    int low = 0;
+    int high = this.size - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final long key = this.keys[mid];
+      final int order = key != version.key ? Long.compare(key, version.key)
+          : this.versions[mid].compareTo(version);
+      if (order < 0) {
+        low = mid + 1;
+      } else if (order > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  T variantAt(final int pos) {
+    return (T) this.variants[pos];
+  }
+
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * @return copy of the variants ordered by their first version
+   */
+  public List<T> values() {
+    final List<T> result = new ArrayList<>(this.size);
+    for (int i = 0; i < this.size; i++) {
+      result.add(this.variantAt(i));
+    }
+    return result;
+  }
+
+  /**
+   * Resolves a version with a floor lookup. Only when the closest variant
+   * ends before the version, e.g. with a max_version, lower ones are tried
+   *
+   * @param version DocVersion to render
+   * @return variant for the version, null if none covers it
+   */
+  public T resolve(final DocVersion version) {
+    final int pos = this.search(version);
+    if (pos >= 0) {
+      return this.variantAt(pos);
+    }
+    for (int i = -pos - 2; i >= 0; i--) {
+      if (this.maxVersionOf.apply(this.variantAt(i)).compareTo(version) >= 0) {
+        return this.variantAt(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Variants whose explicit last version reaches into the range of their
+   * successor. The successor wins for those versions, which is rarely intended
+   *
+   * @param minVersion first version of a variant
+   * @return first versions of the variants it overlaps with
+   */
+  public List<DocVersion> overlaps(final DocVersion minVersion) {
+    final List<DocVersion> result = new ArrayList<>();
+    final int pos = this.search(minVersion);
+    final int lower = pos >= 0 ? pos - 1 : -pos - 2;
+    if (lower >= 0 && this.endsAtOrAfter(this.variantAt(lower), minVersion)) {
+      result.add(this.versions[lower]);
+    }
+    if (pos >= 0 && pos + 1 < this.size
+        && this.endsAtOrAfter(this.variantAt(pos), this.versions[pos + 1])) {
+      result.add(this.versions[pos + 1]);
+    }
+    return result;
+  }
+
+  boolean endsAtOrAfter(final T variant, final DocVersion version) {
+    final DocVersion max = this.maxVersionOf.apply(variant);
+    // Without max_version a variant ends where the next one starts
+    return !max.equals(DocVersion.last()) && max.compareTo(version) >= 0;
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Every version as a mkdocs site of its own. A derived mkdocs.&lt;version&gt;.yml
+ * inherits the main configuration and builds only the version directory, a
+ * mkdocs.root.yml builds the shared pages around them. The builds can run as
+ * parallel processes, all of them write into one site directory
+ */
+public class VersionSites {
+
+  public static final String CONFIG_PLACEHOLDER = "{config}";
+  public static final String VERSION_PLACEHOLDER = "{version}";
+  public static final List<String> DEFAULT_COMMAND =
+      List.of("mkdocs", "build", "--quiet", "--config-file", VersionSites.CONFIG_PLACEHOLDER);
+  public static final String MKDOCS_YML = "mkdocs.yml";
+  public static final String ROOT = "root";
+  public static final String SITE_PATH = "site";
+
+  static final Pattern SITE_URL = Pattern.compile("^site_url:\\s*['\"]?([^'\"#\\s]+)");
+
+  final PreprocessorConfig config;
+
+  public VersionSites(final PreprocessorConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * @param name version or ROOT
+   * @return Path of the derived mkdocs configuration
+   */
+  public Path configFor(final String name) {
+    return this.config.target.resolve(String.format("mkdocs.%s.yml", name));
+  }
+
+  /**
+   * @return Path the sites get built into
+   */
+  public Path siteRoot() {
+    return this.config.target.resolve(VersionSites.SITE_PATH);
+  }
+
+  /**
+   * Writes the derived configurations next to the copied mkdocs.yml,
+   * relative paths in it keep pointing to the same places
+   *
+   * @throws IOException when the main configuration can't be read
+   */
+  public void write() throws IOException {
+    final String siteUrl = this.siteUrl();
+    for (final DocVersion v : this.config.renderedVersions()) {
+      final Map<String, Object> yaml = new LinkedHashMap<>();
+      yaml.put("INHERIT", VersionSites.MKDOCS_YML);
+      yaml.put("docs_dir", PreprocessorConfig.DOCS_PATH + "/" + v);
+      yaml.put("site_dir", VersionSites.SITE_PATH + "/" + v);
+      if (siteUrl != null) {
+        yaml.put("site_url", siteUrl + v + "/");
+      }
+      YamlUtilities.saveYaml(this.configFor(v.toString()), yaml);
+    }
+    // Shared pages like the landing page, versions and aliases are left out
+    final StringBuilder exclude = new StringBuilder();
+    this.config.versions.forEach(v -> exclude.append('/').append(v).append("/\n"));
+    new VersionAliases(this.config).resolve().keySet()
+        .forEach(a -> exclude.append('/').append(a).append("/\n"));
+    final Map<String, Object> yaml = new LinkedHashMap<>();
+    yaml.put("INHERIT", VersionSites.MKDOCS_YML);
+    yaml.put("site_dir", VersionSites.SITE_PATH);
+    yaml.put("exclude_docs", exclude.toString());
+    YamlUtilities.saveYaml(this.configFor(VersionSites.ROOT), yaml);
+  }
+
+  /**
+   * @return site_url of the main configuration ending with a slash, null without one
+   */
+  String siteUrl() throws IOException {
+    for (final String line : Files.readAllLines(
+        this.config.target.resolve(VersionSites.MKDOCS_YML), StandardCharsets.UTF_8)) {
+      final Matcher m = VersionSites.SITE_URL.matcher(line);
+      if (m.find()) {
+        final String url = m.group(1);
+        return url.endsWith("/") ? url : url + "/";
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Builds the root site, it cleans the site directory, then
+   * all versions in parallel and finally points the aliases
+   *
+   * @return number of failed builds
+   */
+  public int build() {
+    if (this.run(VersionSites.ROOT) != 0) {
+      return 1;
+    }
+    int failed = 0;
+    final ExecutorService executor = Executors.newFixedThreadPool(this.config.siteThreads());
+    try {
+      final List<Future<Integer>> results = new ArrayList<>();
+      this.config.renderedVersions()
+          .forEach(v -> results.add(executor.submit(() -> this.run(v.toString()))));
+      for (final Future<Integer> result : results) {
+        try {
+          failed += result.get() == 0 ? 0 : 1;
+        } catch (final ExecutionException e) {
+          e.printStackTrace();
+          failed++;
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return failed + 1;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    if (failed == 0) {
+      new VersionAliases(this.config).update(this.siteRoot());
+    }
+    return failed;
+  }
+
+  /**
+   * Runs the site command for one derived configuration,
+   * its output goes to a log file next to it
+   *
+   * @param name version or ROOT
+   * @return exit code of the command
+   */
+  int run(final String name) {
+    final Path configFile = this.configFor(name);
+    final List<String> command = new ArrayList<>();
+    this.config.siteCommand.forEach(c -> command.add(c
+        .replace(VersionSites.CONFIG_PLACEHOLDER, configFile.getFileName().toString())
+        .replace(VersionSites.VERSION_PLACEHOLDER, name)));
+    final File log = this.config.target.resolve(String.format("mkdocs.%s.log", name)).toFile();
+    final long start = System.nanoTime();
+    try {
+      final Process process = new ProcessBuilder(command)
+          .directory(this.config.target.toFile())
+          .redirectErrorStream(true)
+          .redirectOutput(log)
+          .start();
+      final int exit = process.waitFor();
+      if (exit == 0) {
+        BuildLog.info("Site %s built in %s ms%n", name, (System.nanoTime() - start) / 1000000);
+      } else {
+        BuildLog.warn("Site %s failed with exit code %s, see %s%n", name, exit, log);
+      }
+      return exit;
+    } catch (final IOException e) {
+      BuildLog.warn("Can't run %s: %s%n", command, e.getMessage());
+      return -1;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return -1;
+    }
+  }
+}
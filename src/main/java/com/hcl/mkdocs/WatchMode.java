@@ -33,6 +33,11 @@ public enum WatchMode {
    */
   WATCH_ONLY,
 
+  /**
+   * Run build first, then wait for build commands on a socket
+   */
+  DAEMON,
+
   /**
    * DOn't start watch mode
    */
@@ -53,6 +58,9 @@ public enum WatchMode {
     if (incomingLower.startsWith("b")) {
       return BULID_AND_WATCH;
     }
+    if (incomingLower.startsWith("d")) {
+      return DAEMON;
+    }
     return NONE;
   }
 
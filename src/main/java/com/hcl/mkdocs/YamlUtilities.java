@@ -22,12 +22,14 @@ import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
@@ -39,6 +41,23 @@ public class YamlUtilities {
 
   static final String YAML_DELIMITER = "---";
 
+  /**
+   * Serialized version keys, by version and the versions of a page
+   */
+  static final Map<String, String> VERSION_BLOCKS = new ConcurrentHashMap<>();
+
+  /**
+   * Entries kept in VERSION_BLOCKS, the cache starts over when it is full
+   */
+  static final int VERSION_BLOCKS_LIMIT = 1024;
+
+  /**
+   * Calls of the YAML parser and dumper, reported by BuildMetrics.
+   * Reset when a build starts
+   */
+  static final AtomicLong PARSE_CALLS = new AtomicLong();
+  static final AtomicLong DUMP_CALLS = new AtomicLong();
+
   /**
    * Generate YAML string from a map of values.
    *
@@ -46,9 +65,23 @@ public class YamlUtilities {
    * @return YAML string.
    */
   public static String generateYamlString(final Map<String, Object> values) {
+    return YamlUtilities.generateYamlString(values, MarkdownDocument.DEFAULT_LINE_SEPARATOR);
+  }
+
+  /**
+   * @param values Map containing values for YAML
+   * @param lineSeparator \n or \r\n
+   * @return YAML string
+   */
+  public static String generateYamlString(final Map<String, Object> values,
+      final String lineSeparator) {
     final DumperOptions options = new DumperOptions();
     options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+    options.setLineBreak("\r\n".equals(lineSeparator)
+        ? DumperOptions.LineBreak.WIN
+        : DumperOptions.LineBreak.UNIX);
     final Yaml yaml = new Yaml(options);
+    YamlUtilities.DUMP_CALLS.incrementAndGet();
     return yaml.dump(values);
   }
 
@@ -116,6 +149,7 @@ public class YamlUtilities {
    */
   public static Map<String, Object> parseYamlFromString(final String yamlContent) {
     final Yaml yaml = new Yaml();
+    YamlUtilities.PARSE_CALLS.incrementAndGet();
     return yaml.load(yamlContent);
   }
 
@@ -128,6 +162,87 @@ public class YamlUtilities {
     yaml.put(PreprocessorConfig.DOC_ISLATEST, isLatest);
   }
 
+  /**
+   * The keys this_version, all_versions and isLatest as YAML. Serialized
+   * once per combination of versions, then reused for every page
+   *
+   * @param versions Set of versions the page is rendered for
+   * @param version the version rendered
+   * @param lineSeparator \n or \r\n
+   * @return YAML String
+   */
+  public static String versionFrontMatter(final Set<DocVersion> versions,
+      final DocVersion version, final String lineSeparator) {
+    final String key = version + "@" + versions + lineSeparator;
+    final String cached = YamlUtilities.VERSION_BLOCKS.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    if (YamlUtilities.VERSION_BLOCKS.size() >= YamlUtilities.VERSION_BLOCKS_LIMIT) {
+      YamlUtilities.VERSION_BLOCKS.clear();
+    }
+    return YamlUtilities.VERSION_BLOCKS.computeIfAbsent(key, k -> {
+      final Map<String, Object> block = new LinkedHashMap<>();
+      YamlUtilities.patchYamlWithVersions(versions, version, block);
+      return YamlUtilities.generateYamlString(block, lineSeparator);
+    });
+  }
+
+  /**
+   * @param yaml front-matter
+   * @return true when authors already set one of the version keys
+   */
+  public static boolean hasVersionKeys(final Map<String, Object> yaml) {
+    return yaml.containsKey(PreprocessorConfig.DOC_THIS_VERSION)
+        || yaml.containsKey(PreprocessorConfig.DOC_VERSIONS)
+        || yaml.containsKey(PreprocessorConfig.DOC_ISLATEST);
+  }
+
+  /**
+   * Keys can only be appended to a block mapping, flow style,
+   * a document end marker or a trailing block scalar need a new dump
+   *
+   * @param frontMatterText front-matter lines between the delimiters
+   * @return true when appended block style lines stay valid YAML
+   */
+  public static boolean canAppendKeys(final String frontMatterText) {
+    String first = null;
+    String last = null;
+    for (final String line : frontMatterText.split("\\R")) {
+      final String trimmed = line.strip();
+      if (trimmed.equals("...")) {
+        return false;
+      }
+      if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+        first = first == null ? trimmed : first;
+        last = trimmed;
+      }
+    }
+    return first == null || !first.startsWith("{") && !first.startsWith("[")
+        && !last.matches(".*(^|\\s)[|>][-+0-9]*(\\s+#.*)?$");
+  }
+
+  /**
+   * Writes a markdown document keeping the original front-matter
+   * text as is, the version keys get appended to it
+   *
+   * @param doc MarkdownDocument source
+   * @param versions Set of versions the page is rendered for
+   * @param version the version rendered
+   * @param target Path of the file to write
+   * @return number of bytes written
+   * @throws IOException when reading or writing fails
+   */
+  public static long injectVersions(final MarkdownDocument doc, final Set<DocVersion> versions,
+      final DocVersion version, final Path target) throws IOException {
+    final String nl = doc.lineSeparator;
+    final String header = YamlUtilities.YAML_DELIMITER + nl + doc.frontMatterText
+        + YamlUtilities.versionFrontMatter(versions, version, nl)
+        + YamlUtilities.YAML_DELIMITER + nl;
+    return YamlUtilities.spliceFrontMatter(doc.source, doc.bodyOffset,
+        header.getBytes(StandardCharsets.UTF_8), target);
+  }
+
   public static void replaceFrontMatter(final Path markdownFile, final Map<String, Object> newYaml,
       final PrintWriter pw) throws IOException {
     try (FileInputStream in = new FileInputStream(markdownFile.toFile());
@@ -160,12 +275,67 @@ public class YamlUtilities {
     }
   }
 
-  public static void saveYaml(final Path destination, final Map<String, Object> yaml) {
-    final String toWrite = YamlUtilities.generateYamlString(yaml);
+  /**
+   * Writes a markdown document with new front-matter. Only the header
+   * is generated, with the line break of the source, the body bytes are
+   * transferred unchanged from the source file starting at its offset
+   *
+   * @param doc MarkdownDocument source
+   * @param newYaml front-matter to write
+   * @param target Path of the file to write
+   * @return number of bytes written
+   * @throws IOException when reading or writing fails
+   */
+  public static long writeMarkdown(final MarkdownDocument doc, final Map<String, Object> newYaml,
+      final Path target) throws IOException {
+    final byte[] header = newYaml.isEmpty()
+        ? new byte[0]
+        : YamlUtilities.frontMatterBlock(
+            YamlUtilities.generateYamlString(newYaml, doc.lineSeparator), doc.lineSeparator);
+    return YamlUtilities.spliceFrontMatter(doc.source, doc.bodyOffset, header, target);
+  }
+
+  /**
+   * Writes the header followed by the source file from bodyOffset on,
+   * leaves the target alone when it has that content already
+   *
+   * @param source Path markdown source
+   * @param bodyOffset byte position where the body starts
+   * @param header bytes replacing everything before bodyOffset
+   * @param target Path of the file to write
+   * @return number of bytes written, 0 for an unchanged target
+   * @throws IOException when reading or writing fails
+   */
+  public static long spliceFrontMatter(final Path source, final long bodyOffset,
+      final byte[] header, final Path target) throws IOException {
+    return OutputFiles.splice(source, bodyOffset, header, target);
+  }
+
+  /**
+   * Front-matter enclosed in delimiters, as printed by replaceFrontMatter
+   *
+   * @param yamlString YAML content
+   * @param nl line break
+   * @return UTF-8 bytes
+   */
+  static byte[] frontMatterBlock(final String yamlString, final String nl) {
+    final String block = YamlUtilities.YAML_DELIMITER + nl + yamlString + nl
+        + YamlUtilities.YAML_DELIMITER + nl;
+    return block.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param destination Path of the file to write
+   * @param yaml content
+   * @return number of bytes written, 0 for an unchanged destination or on error
+   */
+  public static long saveYaml(final Path destination, final Map<String, Object> yaml) {
+    final byte[] toWrite = YamlUtilities.generateYamlString(yaml).getBytes(StandardCharsets.UTF_8);
     try {
-      Files.writeString(destination, toWrite, StandardCharsets.UTF_8, StandardOpenOption.CREATE);
+      return OutputFiles.write(destination, toWrite) ? toWrite.length : 0;
     } catch (final IOException e) {
       e.printStackTrace();
+      return 0;
     }
   }
 
@@ -17,9 +17,11 @@
 package com.hcl.mkdocs;
 
 import java.nio.file.Path;
+import java.util.List;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -32,7 +34,9 @@ class DocVersionTest {
         Arguments.of(Path.of("some/dir/doc.v1.1.md"), "1.1", "v1.1"),
         Arguments.of(Path.of("some/dir/doc.v1.2.3.md"), "v3.4", "v1.2.3"),
         Arguments.of(Path.of("some/dir/doc.1.2.md"), "5.0.4", "v5.0.4"),
-        Arguments.of(Path.of("some/dir/doc.1.md"), "v1.2.3", "v1.2.3"));
+        Arguments.of(Path.of("some/dir/doc.1.md"), "v1.2.3", "v1.2.3"),
+        Arguments.of(Path.of("some/dir/my.video.v2.md"), "v1", "v2"),
+        Arguments.of(Path.of("some/dir/v2.pages"), "v1", "v1"));
   }
 
   static Stream<Arguments> provideVersions() {
@@ -47,6 +51,35 @@ class DocVersionTest {
         Arguments.of("1.2.3.5", "v1.2.3.5"));
   }
 
+  @Test
+  void testPackedOrder() {
+    final List<String> sorted = List.of("v1", "v1.0", "v1.0.0.1", "v1.2", "v1.10", "v2",
+        "v3.2.0.1", "v20240101");
+    for (int i = 1; i < sorted.size(); i++) {
+      Assertions.assertTrue(DocVersion.fromString(sorted.get(i - 1))
+          .compareTo(DocVersion.fromString(sorted.get(i))) < 0, sorted.get(i));
+    }
+    Assertions.assertTrue(DocVersion.fromString("v20240101").compareTo(DocVersion.last()) < 0);
+    Assertions.assertSame(DocVersion.fromString("v3.2"), DocVersion.fromString("v3.2"));
+    Assertions.assertEquals(DocVersion.fromString("3.2"), new DocVersion(3, 2));
+  }
+
+  @Test
+  void testSaturatedOrder() {
+    final List<String> sorted = List.of("v1.2045", "v1.2045.7", "v1.2046", "v1.5000",
+        "v1.5000.1", "v1.5001", "v2", "v2024.1015.3", "v2024.1015.2046", "v2024.1016");
+    for (int i = 1; i < sorted.size(); i++) {
+      Assertions.assertTrue(DocVersion.fromString(sorted.get(i - 1))
+          .compareTo(DocVersion.fromString(sorted.get(i))) < 0, sorted.get(i));
+      Assertions.assertTrue(DocVersion.fromString(sorted.get(i))
+          .compareTo(DocVersion.fromString(sorted.get(i - 1))) > 0, sorted.get(i));
+    }
+    Assertions.assertFalse(new DocVersion(1, 5000).exact);
+    Assertions.assertEquals(new DocVersion(1, 5000), DocVersion.fromString("v1.5000"));
+    Assertions.assertNotEquals(new DocVersion(1, 5000), new DocVersion(1, 5001));
+    Assertions.assertTrue(new DocVersion(1, 5000).compareTo(DocVersion.last()) < 0);
+  }
+
   @ParameterizedTest
   @MethodSource("providePath")
   void testFromPath(final Path source, final String fallback, final String expected) {
@@ -0,0 +1,109 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs after package: the fast starting variants have to build
+ * the same site as the plain jar
+ */
+class FastStartIT {
+
+  static final Path JAR = Path.of("target", "MkDocsVersions.jar");
+  static final Path NATIVE = Path.of("target", "MkDocsVersions");
+  static final Path JAVA = Path.of(System.getProperty("java.home"), "bin", "java");
+
+  static Path config(final Path dir, final String name) throws IOException {
+    final Path config = dir.resolve(name + ".yml");
+    Files.writeString(config, String.join("\n",
+        PreprocessorConfig.SOURCE_PATH + ": "
+            + MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e").toAbsolutePath(),
+        PreprocessorConfig.TARGET_PATH + ": " + dir.resolve(name).toAbsolutePath(),
+        PreprocessorConfig.DOC_VERSIONS + ": [v1, v2, v3]",
+        PreprocessorConfig.GENERATE_REDIRECTS + ": true",
+        PreprocessorConfig.GENERATE_LATEST + ": true", ""), StandardCharsets.UTF_8);
+    return config;
+  }
+
+  static void run(final Path log, final String... command) throws Exception {
+    final Process process = new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(log.toFile())
+        .start();
+    Assertions.assertTrue(process.waitFor(120, TimeUnit.SECONDS), "timeout " + command[0]);
+    Assertions.assertEquals(0, process.exitValue(), Files.readString(log));
+  }
+
+  static Path jarBuild(final Path temp) throws Exception {
+    Assertions.assertTrue(FastStartIT.JAR.toFile().exists(), "run after package");
+    FastStartIT.run(temp.resolve("jvm.log"), FastStartIT.JAVA.toString(), "-jar",
+        FastStartIT.JAR.toString(), FastStartIT.config(temp, "jvm").toString());
+    return temp.resolve("jvm");
+  }
+
+  static void assertSameSite(final Path expected, final Path actual) throws IOException {
+    final List<Path> files = new ArrayList<>(MkDocsPreprocessorTest.relativeFiles(expected));
+    files.remove(Path.of(BuildMetrics.METRICS_FILE));
+    final List<Path> actualFiles = new ArrayList<>(MkDocsPreprocessorTest.relativeFiles(actual));
+    actualFiles.remove(Path.of(BuildMetrics.METRICS_FILE));
+    Assertions.assertEquals(files, actualFiles);
+    for (final Path p : files) {
+      Assertions.assertEquals(-1L, Files.mismatch(expected.resolve(p), actual.resolve(p)),
+          p.toString());
+    }
+  }
+
+  @Test
+  void appCdsBuildsSameSite(@TempDir final Path temp) throws Exception {
+    final Path expected = FastStartIT.jarBuild(temp);
+    final Path archive = temp.resolve("MkDocsVersions.jsa");
+    FastStartIT.run(temp.resolve("train.log"), FastStartIT.JAVA.toString(),
+        "-XX:ArchiveClassesAtExit=" + archive, "-jar", FastStartIT.JAR.toString(),
+        FastStartIT.config(temp, "train").toString(), TrainingRun.TRAIN);
+    Assertions.assertTrue(archive.toFile().exists());
+    Assertions.assertFalse(temp.resolve("train").toFile().exists(), "training writes scratch");
+
+    final Path log = temp.resolve("cds.log");
+    FastStartIT.run(log, FastStartIT.JAVA.toString(), "-XX:SharedArchiveFile=" + archive,
+        "-Xlog:class+load=info", "-jar", FastStartIT.JAR.toString(),
+        FastStartIT.config(temp, "cds").toString());
+    Assertions.assertTrue(Files.readString(log)
+        .contains("org.yaml.snakeyaml.Yaml source: shared objects file (top)"));
+    FastStartIT.assertSameSite(expected, temp.resolve("cds"));
+  }
+
+  @Test
+  void nativeBuildsSameSite(@TempDir final Path temp) throws Exception {
+    Assumptions.assumeTrue(Files.isExecutable(FastStartIT.NATIVE), "built with -Pnative");
+    final Path expected = FastStartIT.jarBuild(temp);
+    FastStartIT.run(temp.resolve("native.log"), FastStartIT.NATIVE.toString(),
+        FastStartIT.config(temp, "native").toString());
+    FastStartIT.assertSameSite(expected, temp.resolve("native"));
+  }
+}
@@ -16,14 +16,40 @@
  */
 package com.hcl.mkdocs;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvFileSource;
 
@@ -31,6 +57,25 @@ class MkDocsPreprocessorTest {
 
   static final Path TEST_RESOURCES_PATH = Paths.get("src", "test");
 
+  static List<Path> relativeFiles(final Path root) throws IOException {
+    try (Stream<Path> allFiles = Files.walk(root)) {
+      return allFiles
+          .filter(Files::isRegularFile)
+          .map(root::relativize)
+          .sorted()
+          .toList();
+    }
+  }
+
+  static Path copyOfE2e(final Path destination) throws IOException {
+    final Path e2e = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    for (final Path p : MkDocsPreprocessorTest.relativeFiles(e2e)) {
+      Files.createDirectories(destination.resolve(p).getParent());
+      Files.copy(e2e.resolve(p), destination.resolve(p));
+    }
+    return destination;
+  }
+
   @BeforeAll
   static void testProcessFiles() throws IOException {
     final List<String> versions = Arrays.asList("v1", "v2", "v3");
@@ -56,4 +101,741 @@ class MkDocsPreprocessorTest {
     System.out.println(p.toAbsolutePath());
     Assertions.assertFalse(p.toFile().exists());
   }
+
+  @Test
+  void parallelRenderFailsLikeSequential(@TempDir final Path temp) {
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    for (final int parallelism : List.of(1, 4)) {
+      final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, temp.resolve("p" + parallelism),
+          Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+      mdp.config.parallelism = parallelism;
+      final Path origin = source.resolve("docs/current/broken.md");
+      mdp.siteStructure.pages.put(origin,
+          new PageStructure(origin, mdp.config, mdp.siteStructure.documents) {
+            @Override
+            public void renderOutput() {
+              throw new IllegalStateException("broken page");
+            }
+          });
+      final IllegalStateException e =
+          Assertions.assertThrows(IllegalStateException.class, mdp::processFiles);
+      Assertions.assertEquals("broken page", e.getMessage());
+    }
+  }
+
+  @Test
+  void parallelRenderMatchesSequential() throws IOException {
+    final List<String> versions = Arrays.asList("v1", "v2", "v3");
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    final Path sequential = Path.of("target", "e2e");
+    final Path parallel = Path.of("target", "e2e-parallel");
+    final MkDocsPreprocessor mdp =
+        new MkDocsPreprocessor(source, parallel, versions, true, true, WatchMode.NONE);
+    mdp.config.parallelism = 4;
+    mdp.processFiles();
+
+    final List<Path> expected = MkDocsPreprocessorTest.relativeFiles(sequential);
+    Assertions.assertEquals(expected, MkDocsPreprocessorTest.relativeFiles(parallel));
+    // Only the timings differ
+    expected.stream().filter(p -> !p.endsWith(BuildMetrics.METRICS_FILE)).forEach(p -> {
+      try {
+        Assertions.assertEquals(-1L, Files.mismatch(sequential.resolve(p), parallel.resolve(p)),
+            p.toString());
+      } catch (final IOException e) {
+        Assertions.fail(e);
+      }
+    });
+  }
+
+  @Test
+  void rebuildKeepsUnchangedOutputs(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.copyOfE2e(temp.resolve("source"));
+    final Path target = temp.resolve("target");
+    final List<String> versions = Arrays.asList("v1", "v2", "v3");
+    new MkDocsPreprocessor(source, target, versions, true, true, WatchMode.NONE).processFiles();
+    final List<Path> outputs = List.of(Path.of("docs/v2/info/index.md"),
+        Path.of("docs/v2/info/.pages"), Path.of("docs/info/index.md"), Path.of("docs/index.md"),
+        Path.of("theme_overrides/sample.css"), Path.of("docs/assets/test.txt"));
+    final FileTime old = FileTime.fromMillis(1000000000000L);
+    for (final Path p : outputs) {
+      Files.setLastModifiedTime(target.resolve(p), old);
+    }
+    Files.writeString(source.resolve("docs/assets/test.txt"), "changed");
+
+    new MkDocsPreprocessor(source, target, versions, true, true, WatchMode.NONE).processFiles();
+    for (final Path p : outputs.subList(0, 5)) {
+      Assertions.assertEquals(old, Files.getLastModifiedTime(target.resolve(p)), p.toString());
+    }
+    Assertions.assertEquals("changed", Files.readString(target.resolve(outputs.get(5))));
+    Assertions.assertNotEquals(old, Files.getLastModifiedTime(target.resolve(outputs.get(5))));
+    try (Stream<Path> all = Files.walk(target)) {
+      Assertions.assertTrue(all.noneMatch(p -> p.toString().endsWith(".tmp")));
+    }
+    if (target.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+      // Same permissions as a file created without the temp file detour
+      final Path plain = Files.createFile(temp.resolve("plain.txt"));
+      Assertions.assertEquals(Files.getPosixFilePermissions(plain),
+          Files.getPosixFilePermissions(target.resolve(outputs.get(0))));
+    }
+  }
+
+  @Test
+  void pruneRemovesStaleOutputs(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    final Path target = temp.resolve("target");
+    final List<String> versions = Arrays.asList("v1", "v2", "v3");
+    new MkDocsPreprocessor(source, target, versions, true, true, WatchMode.NONE).processFiles();
+    final List<Path> expected = MkDocsPreprocessorTest.relativeFiles(target);
+    final List<Path> stale = List.of(Path.of("docs/v2/info/renamed.md"),
+        Path.of("docs/v0/index.md"), Path.of("theme_overrides/old.css"));
+    for (final Path p : stale) {
+      Files.createDirectories(target.resolve(p).getParent());
+      Files.writeString(target.resolve(p), "stale");
+    }
+
+    for (final boolean incremental : List.of(false, true, true)) {
+      final MkDocsPreprocessor mdp =
+          new MkDocsPreprocessor(source, target, versions, true, true, WatchMode.NONE);
+      mdp.config.pruneOutputs = true;
+      mdp.config.incremental = incremental;
+      mdp.processFiles();
+      final List<Path> actual = MkDocsPreprocessorTest.relativeFiles(target).stream()
+          .filter(p -> !p.endsWith(BuildManifest.MANIFEST_FILE))
+          .toList();
+      Assertions.assertEquals(expected, actual);
+    }
+    Assertions.assertFalse(target.resolve("docs/v0").toFile().exists());
+
+    // A preview of one version keeps the outputs of the others
+    final MkDocsPreprocessor preview =
+        new MkDocsPreprocessor(source, target, versions, true, true, WatchMode.NONE);
+    preview.config.pruneOutputs = true;
+    preview.config.setRenderVersions(List.of("v3"));
+    preview.processFiles();
+    Assertions.assertTrue(target.resolve("docs/v1/info/index.md").toFile().exists());
+    Assertions.assertTrue(target.resolve("docs/v2/info/index.md").toFile().exists());
+  }
+
+  @Test
+  void aliasesPointAtVersions(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    final Path docs = temp.resolve(PreprocessorConfig.DOCS_PATH);
+    final MkDocsPreprocessor first = new MkDocsPreprocessor(source, temp,
+        Arrays.asList("v1", "v2"), true, true, WatchMode.NONE);
+    first.config.versionAliases.put("stable", "v1");
+    first.config.versionAliases.put("v2", "v1");
+    first.processFiles();
+    Assertions.assertEquals(Path.of("v2"), Files.readSymbolicLink(docs.resolve("latest")));
+    Assertions.assertEquals(Path.of("v1"), Files.readSymbolicLink(docs.resolve("stable")));
+    Assertions.assertTrue(Files.isDirectory(docs.resolve("v2")));
+    Assertions.assertTrue(docs.resolve("latest/info/index.md").toFile().exists());
+
+    // A new version moves latest, the tree strategy replaces the link by files
+    final MkDocsPreprocessor second = new MkDocsPreprocessor(source, temp,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    second.config.aliasStrategy = CopyStrategy.HARDLINK;
+    second.processFiles();
+    final Path latest = docs.resolve("latest/info/index.md");
+    Assertions.assertFalse(Files.isSymbolicLink(docs.resolve("latest")));
+    Assertions.assertTrue(Files.isSameFile(docs.resolve("v3/info/index.md"), latest));
+    try (Stream<Path> all = Files.list(docs)) {
+      Assertions.assertTrue(all.noneMatch(p -> p.getFileName().toString().startsWith(".latest")));
+    }
+
+    final MkDocsPreprocessor third = new MkDocsPreprocessor(source, temp,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    third.processFiles();
+    Assertions.assertEquals(Path.of("v3"), Files.readSymbolicLink(docs.resolve("latest")));
+  }
+
+  @Test
+  void redirectRulesReplaceStubs(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    final Path docs = temp.resolve(PreprocessorConfig.DOCS_PATH);
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, temp,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    mdp.config.redirectRules = RedirectFormat.JSON;
+    mdp.config.redirectStubs = false;
+    mdp.processFiles();
+
+    final Map<String, Object> rules =
+        YamlUtilities.parseYaml(temp.resolve(RedirectFormat.JSON.fileName));
+    Assertions.assertEquals("/v3/info/", rules.get("/info/"));
+    Assertions.assertFalse(rules.containsKey("/"));
+    Assertions.assertFalse(docs.resolve("info/index.md").toFile().exists());
+    Assertions.assertTrue(docs.resolve("v3/info/index.md").toFile().exists());
+    Assertions.assertTrue(RedirectFormat.NGINX.render(Map.of("/a%20b/", "/v1/a%20b/"))
+        .contains("\"/a b/\" \"/v1/a%20b/\";"));
+  }
+
+  @Test
+  void rootRedirectWithoutLandingPage(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.copyOfE2e(temp.resolve("source"));
+    final Path landing = source.resolve(PreprocessorConfig.DOCS_PATH)
+        .resolve(PreprocessorConfig.INDEX);
+    Files.delete(landing);
+    final Path target = temp.resolve("target");
+    final Path index = target.resolve(PreprocessorConfig.DOCS_PATH)
+        .resolve(PreprocessorConfig.INDEX);
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, target,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    mdp.processFiles();
+    Assertions.assertTrue(Files.readString(index).contains("v3/index.md"));
+
+    // A landing page added later replaces the redirect
+    Files.writeString(landing, "# Landing\n");
+    mdp.handleChanges(Set.of(landing), Set.of());
+    Assertions.assertEquals("# Landing\n", Files.readString(index));
+  }
+
+  @Test
+  void versionSitesBuildInParallel(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, temp,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    mdp.config.versionSites = true;
+    final VersionSites sites = new VersionSites(mdp.config);
+    mdp.processFiles();
+
+    final Map<String, Object> v2 = YamlUtilities.parseYaml(sites.configFor("v2"));
+    Assertions.assertEquals(VersionSites.MKDOCS_YML, v2.get("INHERIT"));
+    Assertions.assertEquals("docs/v2", v2.get("docs_dir"));
+    Assertions.assertEquals("https://opensource.hcltechsw.com/hcl-mkdocs-build-image/v2/",
+        v2.get("site_url"));
+    Assertions.assertTrue(String.valueOf(YamlUtilities.parseYaml(
+        sites.configFor(VersionSites.ROOT)).get("exclude_docs")).contains("/latest/"));
+
+    // A stub instead of mkdocs, it copies the configuration into the site
+    if (Files.isExecutable(Path.of("/bin/sh"))) {
+      mdp.config.buildSites = true;
+      mdp.config.siteParallelism = 2;
+      mdp.config.siteCommand = List.of("/bin/sh", "-c",
+          "mkdir -p site/$1 && cp \"$0\" site/$1/built.yml", VersionSites.CONFIG_PLACEHOLDER,
+          VersionSites.VERSION_PLACEHOLDER);
+      mdp.processFiles();
+      for (final String v : List.of("v1", "v2", "v3", VersionSites.ROOT)) {
+        Assertions.assertTrue(sites.siteRoot().resolve(v).resolve("built.yml").toFile().exists());
+      }
+      Assertions.assertEquals(Path.of("v3"),
+          Files.readSymbolicLink(sites.siteRoot().resolve(VersionAliases.LATEST)));
+
+      mdp.config.siteCommand = List.of("/bin/sh", "-c", "exit 3");
+      Assertions.assertThrows(IOException.class, mdp::processFiles);
+    }
+  }
+
+  @Test
+  void previewRendersSubset(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    final Path docs = temp.resolve(PreprocessorConfig.DOCS_PATH);
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, temp,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    mdp.config.setRenderVersions(List.of("latest"));
+    mdp.processFiles();
+
+    Assertions.assertFalse(docs.resolve("v1").toFile().exists());
+    Assertions.assertFalse(docs.resolve("v2").toFile().exists());
+    final Map<String, Object> page =
+        YamlUtilities.parseYamlFromMarkdown(docs.resolve("v3/info/index.md"));
+    Assertions.assertEquals(List.of("v1", "v2", "v3"), page.get("all_versions"));
+    Assertions.assertTrue(docs.resolve("info/index.md").toFile().exists());
+    Assertions.assertEquals(Path.of("v3"), Files.readSymbolicLink(docs.resolve("latest")));
+
+    // Another subset is a different build, incremental state isn't reused
+    mdp.config.setRenderVersions(List.of("v1"));
+    Assertions.assertEquals(Set.of(DocVersion.fromString("v1")),
+        mdp.config.renderedVersions());
+    Assertions.assertNotEquals(new PreprocessorConfig(source, temp,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE).fingerprint(),
+        mdp.config.fingerprint());
+  }
+
+  /**
+   * One request per connection, the daemon closes it after the answer
+   */
+  static List<String> request(final Path socket, final String command) throws IOException {
+    try (SocketChannel client = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+      final PrintWriter out =
+          new PrintWriter(Channels.newWriter(client, StandardCharsets.UTF_8), true);
+      out.println(command);
+      final BufferedReader in =
+          new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+      final List<String> result = new ArrayList<>();
+      String line;
+      while ((line = in.readLine()) != null) {
+        result.add(line);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Runs processFiles of a daemon in a thread until its socket accepts requests
+   */
+  static Thread startDaemon(final MkDocsPreprocessor mdp) throws InterruptedException {
+    final Thread daemon = new Thread(() -> {
+      try {
+        mdp.processFiles();
+      } catch (final IOException e) {
+        e.printStackTrace();
+      }
+    });
+    daemon.start();
+    final UnixDomainSocketAddress address = UnixDomainSocketAddress.of(mdp.config.daemonSocket);
+    for (int i = 0; i < 300; i++) {
+      try (SocketChannel probe = SocketChannel.open(address)) {
+        return daemon;
+      } catch (final IOException e) {
+        Thread.sleep(100);
+      }
+    }
+    Assertions.fail("daemon didn't start");
+    return daemon;
+  }
+
+  @Test
+  void daemonBuildsOnRequest(@TempDir final Path temp) throws Exception {
+    final Path source = MkDocsPreprocessorTest.copyOfE2e(temp.resolve("source"));
+    final Path target = temp.resolve("target");
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, target,
+        Arrays.asList("v1", "v2"), true, true, WatchMode.DAEMON);
+    final Thread daemon = MkDocsPreprocessorTest.startDaemon(mdp);
+    final Path socket = mdp.config.daemonSocket;
+    // A client that never sends its request doesn't block the others
+    try (SocketChannel silent = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+      Assertions.assertTrue(MkDocsPreprocessorTest.request(socket, "status").contains("builds 0"));
+      Assertions.assertTrue(MkDocsPreprocessorTest.request(socket, "build").contains("changed 0"));
+
+      final Path page = source.resolve("docs/current/info/onlyTillVersion2.md");
+      Files.writeString(page, "\nAdded by the daemon test\n", StandardOpenOption.APPEND);
+      Files.setLastModifiedTime(page, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+      final List<String> build = MkDocsPreprocessorTest.request(socket, "build");
+      Assertions.assertTrue(build.contains("changed 1"), build.toString());
+      Assertions.assertTrue(build.get(build.size() - 1).matches("ok \\d+ ms"));
+      final Path rendered = target.resolve("docs/v1/info/onlyTillVersion2.md");
+      Assertions.assertTrue(Files.readString(rendered).contains("Added by the daemon test"));
+
+      Assertions.assertTrue(MkDocsPreprocessorTest
+          .request(socket, "build paths docs/current/info/index.md").contains("changed 1"));
+      Assertions.assertTrue(
+          MkDocsPreprocessorTest.request(socket, "rebuild").get(0).startsWith("error "));
+
+      // A directory in place of the output makes the render fail
+      Files.delete(rendered);
+      Files.createDirectories(rendered.resolve("blocked"));
+      final List<String> failed = MkDocsPreprocessorTest.request(socket,
+          "build paths docs/current/info/onlyTillVersion2.md");
+      Assertions.assertTrue(failed.get(failed.size() - 1).startsWith("error "),
+          failed.toString());
+      MkDocsPreprocessorTest.request(socket, "stop");
+    }
+    daemon.join(30000);
+    Assertions.assertFalse(daemon.isAlive());
+    Assertions.assertFalse(mdp.config.daemonSocket.toFile().exists());
+  }
+
+  @Test
+  void buildWritesMetrics(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, temp,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    mdp.config.metricsTop = 3;
+    mdp.processFiles();
+
+    final Map<String, Object> metrics =
+        YamlUtilities.parseYaml(temp.resolve(BuildMetrics.METRICS_FILE));
+    final Map<?, ?> phases = (Map<?, ?>) metrics.get("phases_ms");
+    for (final String phase : List.of(BuildMetrics.TREE_WALK, BuildMetrics.PAGE_VARIATIONS,
+        BuildMetrics.ASSET_COPY, BuildMetrics.PAGE_RENDER, BuildMetrics.MENU_RENDER,
+        BuildMetrics.LANDING)) {
+      Assertions.assertTrue(phases.containsKey(phase), phase);
+    }
+    final Map<?, ?> outputs = (Map<?, ?>) metrics.get("outputs");
+    Assertions.assertTrue(((Number) outputs.get("markdown")).intValue() > 0);
+    Assertions.assertTrue(((Number) outputs.get("menu")).intValue() > 0);
+    Assertions.assertTrue(((Number) metrics.get("yaml_dump_calls")).intValue() > 0);
+    Assertions.assertTrue(((Number) metrics.get("bytes_written")).longValue() > 0);
+    Assertions.assertEquals(3, ((List<?>) metrics.get("slowest_sources")).size());
+
+    // A relative metrics_file is below the target, missing directories get created
+    final Path configFile = temp.resolve("config.yml");
+    Files.writeString(configFile, "source: " + source + "\ntarget: " + temp.resolve("out")
+        + "\nmetrics_file: reports/build.json\n");
+    final PreprocessorConfig config = new PreprocessorConfig(configFile, WatchMode.NONE);
+    Assertions.assertEquals(temp.resolve("out/reports/build.json"), config.metricsFile);
+    mdp.siteStructure.metrics.save(config.metricsFile);
+    Assertions.assertTrue(Files.isRegularFile(config.metricsFile));
+  }
+
+  @Test
+  void incrementalBuildSkipsUnchanged() throws IOException {
+    final List<String> versions = Arrays.asList("v1", "v2", "v3");
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    final Path target = Path.of("target", "e2e-incremental");
+    final Path page = target.resolve("docs/v2/info/index.md");
+
+    final MkDocsPreprocessor first =
+        new MkDocsPreprocessor(source, target, versions, true, true, WatchMode.NONE);
+    first.config.incremental = true;
+    first.processFiles();
+    Assertions.assertTrue(target.resolve(BuildManifest.MANIFEST_FILE).toFile().exists());
+    final long rendered = Files.getLastModifiedTime(page).toMillis();
+
+    final MkDocsPreprocessor second =
+        new MkDocsPreprocessor(source, target, versions, true, true, WatchMode.NONE);
+    second.config.incremental = true;
+    Assertions.assertEquals(0, second.processFiles());
+    Assertions.assertEquals(rendered, Files.getLastModifiedTime(page).toMillis());
+  }
+
+  @Test
+  void incrementalBuildRetriesFailedPages(@TempDir final Path temp) throws IOException {
+    final List<String> versions = Arrays.asList("v1", "v2", "v3");
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    final Path page = temp.resolve("docs/v2/info/index.md");
+    // A directory in place of the output makes the render fail
+    Files.createDirectories(page.resolve("blocked"));
+
+    final MkDocsPreprocessor first =
+        new MkDocsPreprocessor(source, temp, versions, true, true, WatchMode.NONE);
+    first.config.incremental = true;
+    first.processFiles();
+    Assertions.assertTrue(first.siteStructure.metrics.failed
+        .contains(source.resolve("docs/current/info/index.v2.md")));
+    Assertions.assertTrue(Files.isDirectory(page));
+
+    Files.delete(page.resolve("blocked"));
+    Files.delete(page);
+    final MkDocsPreprocessor second =
+        new MkDocsPreprocessor(source, temp, versions, true, true, WatchMode.NONE);
+    second.config.incremental = true;
+    second.processFiles();
+    Assertions.assertTrue(Files.isRegularFile(page));
+    Assertions.assertTrue(second.siteStructure.metrics.failed.isEmpty());
+  }
+
+  @Test
+  void skippedMenusFollowLinkedPages(@TempDir final Path temp) throws Exception {
+    final Path source = MkDocsPreprocessorTest.copyOfE2e(temp.resolve("source"));
+    final Path target = temp.resolve("target");
+    final List<String> versions = Arrays.asList("v1", "v2", "v3");
+    final MkDocsPreprocessor first =
+        new MkDocsPreprocessor(source, target, versions, true, true, WatchMode.NONE);
+    first.config.incremental = true;
+    first.processFiles();
+
+    // Nothing changed, the daemon's first build renders no menu
+    final MkDocsPreprocessor mdp =
+        new MkDocsPreprocessor(source, target, versions, true, true, WatchMode.DAEMON);
+    mdp.config.incremental = true;
+    final Thread daemon = MkDocsPreprocessorTest.startDaemon(mdp);
+    final Path menu = target.resolve("docs/v1/info/.pages");
+    Assertions.assertFalse(Files.readString(menu).contains("fromVersion2onwards.md"));
+
+    Files.writeString(source.resolve("docs/current/info/fromVersion2onwards.md"),
+        "# Now in every version\n");
+    MkDocsPreprocessorTest.request(mdp.config.daemonSocket, "build");
+    MkDocsPreprocessorTest.request(mdp.config.daemonSocket, "stop");
+    daemon.join(30000);
+    Assertions.assertTrue(Files.readString(menu).contains("fromVersion2onwards.md"));
+  }
+
+  @Test
+  void linkStrategiesShareContent() throws IOException {
+    final List<String> versions = Arrays.asList("v1", "v2", "v3");
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    final Path asset = source.resolve("docs/assets/test.txt");
+    for (final CopyStrategy strategy : CopyStrategy.values()) {
+      final Path target = Path.of("target", "e2e-" + strategy.name().toLowerCase());
+      final MkDocsPreprocessor mdp =
+          new MkDocsPreprocessor(source, target, versions, true, true, WatchMode.NONE);
+      mdp.config.copyStrategy = strategy;
+      mdp.processFiles();
+      final Path copied = target.resolve("docs/assets/test.txt");
+      Assertions.assertEquals(-1L, Files.mismatch(asset, copied), strategy.name());
+      if (CopyStrategy.HARDLINK.equals(strategy)) {
+        Assertions.assertTrue(Files.isSameFile(asset, copied));
+      } else if (CopyStrategy.SYMLINK.equals(strategy)) {
+        Assertions.assertTrue(Files.isSymbolicLink(copied));
+      }
+    }
+  }
+
+  @Test
+  void contentStoreDropsUnreferencedFiles(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.copyOfE2e(temp.resolve("source"));
+    final Path target = temp.resolve("target");
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, target,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    mdp.config.copyStrategy = CopyStrategy.SYMLINK;
+    mdp.processFiles();
+    final Path copied = target.resolve("docs/assets/test.txt");
+    final Path stored = copied.getParent().resolve(Files.readSymbolicLink(copied));
+
+    // A changed asset leaves its old content unreferenced
+    Files.writeString(source.resolve("docs/assets/test.txt"), "changed\n");
+    mdp.copier.forget(source.resolve("docs/assets/test.txt"));
+    mdp.processFiles();
+    Assertions.assertEquals("changed\n", Files.readString(copied));
+    Assertions.assertFalse(Files.exists(stored));
+    Assertions.assertEquals(0, mdp.copier.collectGarbage());
+  }
+
+  @Test
+  void copierFallsBackPerCause() {
+    Assertions.assertEquals("cross-device", FileCopier.repeatingCause(
+        new FileSystemException("a", "b", "Invalid cross-device link")));
+    Assertions.assertEquals("reflink",
+        FileCopier.repeatingCause(new IOException(FileCopier.REFLINK_FAILED)));
+    Assertions.assertEquals("unsupported",
+        FileCopier.repeatingCause(new UnsupportedOperationException()));
+    Assertions.assertNull(FileCopier.repeatingCause(new AccessDeniedException("a")));
+  }
+
+  @Test
+  void watchRendersDependentMenus(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.copyOfE2e(temp.resolve("source"));
+    final Path target = temp.resolve("target");
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, target,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    mdp.processFiles();
+    final Path menu = target.resolve("docs/v1/info/.pages");
+    final Path unrelated = target.resolve("docs/v1/.pages");
+    Assertions.assertFalse(Files.readString(menu).contains("fromVersion2onwards.md"));
+    Files.delete(unrelated);
+
+    // A page for all versions makes the pruned link valid in v1
+    final Path page = source.resolve("docs/current/info/fromVersion2onwards.md");
+    Files.writeString(page, "# Now in every version\n");
+    final Path landing = source.resolve("docs/index.md");
+    Files.writeString(landing, "- [Moved](current/info/index.md)\n");
+    mdp.handleChanges(new LinkedHashSet<>(List.of(page, landing)), Set.of());
+
+    Assertions.assertTrue(Files.readString(menu).contains("fromVersion2onwards.md"));
+    Assertions.assertFalse(unrelated.toFile().exists());
+    Assertions.assertEquals("- [Moved](v3/info/index.md)\n",
+        Files.readString(target.resolve("docs/index.md")));
+  }
+
+  @Test
+  void watchRelinksChangedAliasFiles(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.copyOfE2e(temp.resolve("source"));
+    final Path docs = temp.resolve("target").resolve(PreprocessorConfig.DOCS_PATH);
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, temp.resolve("target"),
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    mdp.config.aliasStrategy = CopyStrategy.HARDLINK;
+    mdp.processFiles();
+    final Path tree = docs.resolve("latest/info");
+    final Object treeKey = Files.readAttributes(tree, BasicFileAttributes.class).fileKey();
+
+    // Only the edited page gets linked again, the tree stays in place
+    final Path page = source.resolve("docs/current/info/level2/index.md");
+    Files.writeString(page, "# Edited\n");
+    final Path demo = source.resolve("docs/current/info/level2/level3/demo3.md");
+    Files.delete(demo);
+    mdp.handleChanges(Set.of(page), Set.of(demo));
+    Assertions.assertTrue(Files.isSameFile(docs.resolve("v3/info/level2/index.md"),
+        docs.resolve("latest/info/level2/index.md")));
+    Assertions.assertFalse(docs.resolve("latest/info/level2/level3/demo3.md").toFile().exists());
+    Assertions.assertEquals(treeKey,
+        Files.readAttributes(tree, BasicFileAttributes.class).fileKey());
+  }
+
+  @Test
+  void watchHandlesDeletesAndNewDirectories(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.copyOfE2e(temp.resolve("source"));
+    final Path target = temp.resolve("target");
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, target,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    mdp.processFiles();
+
+    try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+      mdp.startWatching(watchService, source);
+
+      // Files in a new directory are created before it gets registered
+      final Path dir = source.resolve("docs/current/info/level2/new");
+      final Path page = dir.resolve("page.md");
+      Files.createDirectories(dir);
+      Files.writeString(page, "# New\n");
+      final Set<Path> changed = new LinkedHashSet<>(List.of(dir));
+      final Set<Path> deleted = new LinkedHashSet<>();
+      mdp.refreshWatchState(watchService, changed, deleted);
+      Assertions.assertEquals(Set.of(page), changed);
+      Assertions.assertTrue(mdp.watchedDirectories.containsValue(dir));
+      mdp.handleChanges(changed, deleted);
+      Assertions.assertTrue(target.resolve("docs/v2/info/level2/new/page.md").toFile().exists());
+
+      // Deleted pages take their outputs and menu entries with them
+      final Path demo = source.resolve("docs/current/info/level2/demo2.md");
+      Files.delete(demo);
+      changed.clear();
+      mdp.rescanNeeded = true;
+      mdp.refreshWatchState(watchService, changed, deleted);
+      Assertions.assertEquals(Set.of(demo), deleted);
+      mdp.handleChanges(changed, deleted);
+      Assertions.assertFalse(target.resolve("docs/v2/info/level2/demo2.md").toFile().exists());
+      Assertions.assertFalse(target.resolve("docs/latest/info/level2/demo2.md").toFile().exists());
+      Assertions.assertFalse(target.resolve("docs/info/level2/demo2.md").toFile().exists());
+      Assertions.assertFalse(
+          Files.readString(target.resolve("docs/v2/info/.pages")).contains("demo2.md"));
+    }
+  }
+
+  @Test
+  void menuLinksCheckRenderedOutputs() {
+    final PreprocessorConfig config = new PreprocessorConfig(Path.of("src"), Path.of("target"),
+        List.of("v1"), false, false, WatchMode.NONE);
+    final DependencyGraph rendered = new DependencyGraph();
+    final Path dir = Path.of("target", "menu", "v1");
+    rendered.setOutputs(Path.of("a.md"), List.of(dir.resolve("a.md")));
+    rendered.setOutputs(Path.of("deep.md"), List.of(dir.resolve("sub/deep.md")));
+    final MenuStructure ms = new MenuStructure(Path.of("src"), config, rendered);
+
+    final Map<String, Object> yaml = Map.of("nav",
+        List.of("a.md", "missing.md", Map.of("Sub", "./sub/"), Map.of("Gone", "gone.md")));
+    Assertions.assertEquals(List.of("a.md", Map.of("Sub", "./sub/")),
+        ms.checkThatLinkedPagesExist(dir, yaml).get("nav"));
+  }
+
+  @Test
+  void snapshotClassifiesSources() throws IOException {
+    final Path source = MkDocsPreprocessorTest.TEST_RESOURCES_PATH.resolve("e2e");
+    final PreprocessorConfig config = new PreprocessorConfig(source, Path.of("target", "e2e"),
+        List.of("v1"), false, false, WatchMode.NONE);
+    final SourceSnapshot snapshot = SourceSnapshot.scan(config);
+    final Map<Path, SourceSnapshot.Kind> kinds = new HashMap<>();
+    snapshot.entries.values().forEach(e -> kinds.put(source.relativize(e.path), e.kind));
+
+    Assertions.assertEquals(SourceSnapshot.Kind.EXTRA,
+        kinds.get(Path.of("theme_overrides/sample.css")));
+    Assertions.assertEquals(SourceSnapshot.Kind.MARKDOWN,
+        kinds.get(Path.of("docs/current/info/index.v2.md")));
+    Assertions.assertEquals(SourceSnapshot.Kind.PAGES,
+        kinds.get(Path.of("docs/current/info/v2.pages")));
+    Assertions.assertEquals(SourceSnapshot.Kind.ASSET, kinds.get(Path.of("docs/index.md")));
+    Assertions.assertFalse(kinds.containsKey(Path.of("mkdocs.yml")));
+    Assertions.assertEquals(MkDocsPreprocessorTest.relativeFiles(source.resolve("docs")).size()
+        + MkDocsPreprocessorTest.relativeFiles(source.resolve("theme_overrides")).size(),
+        snapshot.size());
+  }
+
+  @Test
+  void watchOnlyKeepsMenuLinksOfEarlierBuild(@TempDir final Path temp) throws IOException {
+    final Path source = MkDocsPreprocessorTest.copyOfE2e(temp.resolve("source"));
+    final Path target = temp.resolve("target");
+    new MkDocsPreprocessor(source, target, Arrays.asList("v1", "v2"), true, true,
+        WatchMode.NONE).processFiles();
+
+    final Path rendered = target.resolve("docs/v1/info/.pages");
+    final Object nav = YamlUtilities.parseYaml(rendered).get("nav");
+
+    // Watch only starts without a build, the menu links pages on disk
+    final MkDocsPreprocessor watcher = new MkDocsPreprocessor(source, target,
+        Arrays.asList("v1", "v2"), true, true, WatchMode.WATCH_ONLY);
+    final Path menu = source.resolve("docs/current/info/.pages");
+    Files.writeString(menu, "title: Info\n" + Files.readString(menu));
+    watcher.handleChanges(new LinkedHashSet<>(List.of(menu)), Set.of());
+    Assertions.assertEquals(nav, YamlUtilities.parseYaml(rendered).get("nav"));
+  }
+
+  @Test
+  void watchIgnoresEditorTempFiles() {
+    final PreprocessorConfig config = new PreprocessorConfig(Path.of("src"), Path.of("target"),
+        List.of("v1"), false, false, WatchMode.WATCH_ONLY);
+    Assertions.assertTrue(config.isIgnoredInWatch(Path.of("docs", ".index.md.swp")));
+    Assertions.assertTrue(config.isIgnoredInWatch(Path.of("docs", "index.md~")));
+    Assertions.assertTrue(config.isIgnoredInWatch(Path.of("docs", "4913")));
+    Assertions.assertFalse(config.isIgnoredInWatch(Path.of("docs", "index.md")));
+  }
+
+  @Test
+  void watchRendersBurstOnce(@TempDir final Path temp) throws Exception {
+    final Path source = MkDocsPreprocessorTest.copyOfE2e(temp.resolve("source"));
+    final Path target = temp.resolve("target");
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, target,
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    mdp.processFiles();
+    final AtomicLong markdown = mdp.siteStructure.metrics.outputs.get("markdown");
+
+    try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+      mdp.startWatching(watchService, source);
+      // An editor saving the same page several times
+      final Path page = source.resolve("docs/current/info/index.md");
+      for (int i = 0; i < 5; i++) {
+        Files.writeString(page, "\nSaved " + i + "\n", StandardOpenOption.APPEND);
+      }
+      final Set<Path> changed = new LinkedHashSet<>();
+      final Set<Path> deleted = new LinkedHashSet<>();
+      Assertions.assertTrue(mdp.collectBatch(watchService, changed, deleted));
+      Assertions.assertEquals(Set.of(page), changed);
+
+      final long before = markdown.get();
+      mdp.handleChanges(changed, deleted);
+      // v1 from index.md, v2 and v3 from index.v2.md, each rendered once
+      Assertions.assertEquals(3, markdown.get() - before);
+      Assertions.assertTrue(Files.readString(target.resolve("docs/v1/info/index.md"))
+          .contains("Saved 4"));
+    }
+  }
+
+  @Test
+  void watchEndsBatchAfterMaxDelay(@TempDir final Path temp) throws Exception {
+    final Path source = MkDocsPreprocessorTest.copyOfE2e(temp.resolve("source"));
+    final MkDocsPreprocessor mdp = new MkDocsPreprocessor(source, temp.resolve("target"),
+        Arrays.asList("v1", "v2", "v3"), true, true, WatchMode.NONE);
+    mdp.config.watchQuietPeriod = 1000;
+    mdp.config.watchMaxDelay = 300;
+    final Path page = source.resolve("docs/current/info/index.md");
+    final AtomicBoolean writing = new AtomicBoolean(true);
+    // A generator that never lets the file system get quiet
+    final Thread generator = new Thread(() -> {
+      try {
+        while (writing.get()) {
+          Files.writeString(page, "\nGenerated\n", StandardOpenOption.APPEND);
+          Thread.sleep(50);
+        }
+      } catch (final IOException | InterruptedException e) {
+        e.printStackTrace();
+      }
+    });
+    try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+      mdp.startWatching(watchService, source);
+      generator.start();
+      final long start = System.nanoTime();
+      final Set<Path> changed = new LinkedHashSet<>();
+      mdp.collectBatch(watchService, changed, new LinkedHashSet<>());
+      final long millis = (System.nanoTime() - start) / 1000000;
+      Assertions.assertTrue(millis < 2000, millis + " ms");
+      Assertions.assertEquals(Set.of(page), changed);
+    } finally {
+      writing.set(false);
+      generator.join();
+    }
+  }
+
+  @Test
+  void logLevelFiltersMessages() {
+    final PrintStream console = System.out;
+    final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    final LogLevel before = BuildLog.level;
+    try {
+      BuildLog.flush();
+      System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+      BuildLog.setLevel(LogLevel.SUMMARY);
+      BuildLog.file("COPY %s%n", "hidden");
+      BuildLog.info("first %s%n", 1);
+      BuildLog.setLevel(LogLevel.FILES);
+      BuildLog.file("COPY %s%n", "shown");
+      BuildLog.setLevel(LogLevel.QUIET);
+      BuildLog.info("second %s%n", 2);
+      BuildLog.flush();
+    } finally {
+      System.setOut(console);
+      BuildLog.setLevel(before);
+    }
+    Assertions.assertEquals(String.format("first 1%nCOPY shown%n"),
+        captured.toString(StandardCharsets.UTF_8));
+    Assertions.assertEquals(LogLevel.FILES, LogLevel.get("files"));
+    Assertions.assertEquals(LogLevel.SUMMARY, LogLevel.get(null));
+  }
 }
@@ -0,0 +1,78 @@
+/*
+ * ==========================================================================
+ * Copyright (C) 2023-2024 HCL America, Inc. ( https://www.hcl.com/ )
+ *                            All rights reserved.
+ * ==========================================================================
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may
+ * not use this file except in compliance with the License.  You may obtain a
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.
+ *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the  specific language  governing permissions  and limitations
+ * under the License.
+ * ==========================================================================
+ */
+package com.hcl.mkdocs;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class VersionIndexTest {
+  static Stream<Arguments> provideResolve() {
+    return Stream.of(
+        Arguments.of("v1", "a"),
+        Arguments.of("v1.5", "a"),
+        Arguments.of("v2", "b"),
+        Arguments.of("v2.0.7", "b"),
+        Arguments.of("v2.1.7", "a"),
+        Arguments.of("v2.5", "a"),
+        Arguments.of("v3", "c"),
+        Arguments.of("v9.0.0.1", "c"));
+  }
+
+  static VersionIndex<String> variants(final String maxOfB) {
+    final Map<String, DocVersion> max = Map.of("a", DocVersion.last(),
+        "b", DocVersion.fromString(maxOfB), "c", DocVersion.last());
+    final VersionIndex<String> index = new VersionIndex<>(max::get);
+    index.put(DocVersion.fromString("v3"), "c");
+    index.put(DocVersion.fromString("v1"), "a");
+    index.put(DocVersion.fromString("v2"), "b");
+    return index;
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideResolve")
+  void testResolve(final String version, final String expected) {
+    final VersionIndex<String> index = VersionIndexTest.variants("v2.1");
+    Assertions.assertEquals(expected, index.resolve(DocVersion.fromString(version)));
+    Assertions.assertTrue(index.overlaps(DocVersion.fromString("v2")).isEmpty());
+  }
+
+  @Test
+  void testOverlappingMaxVersion() {
+    final VersionIndex<String> index = VersionIndexTest.variants("v3.1");
+    Assertions.assertEquals(List.of(DocVersion.fromString("v3")),
+        index.overlaps(DocVersion.fromString("v2")));
+    Assertions.assertEquals(List.of(DocVersion.fromString("v2")),
+        index.overlaps(DocVersion.fromString("v3")));
+    Assertions.assertEquals("c", index.resolve(DocVersion.fromString("v3.1")));
+  }
+
+  @Test
+  void testSaturatedVersions() {
+    final VersionIndex<String> index = new VersionIndex<>(v -> DocVersion.last());
+    index.put(DocVersion.fromString("v1.5001"), "b");
+    index.put(DocVersion.fromString("v1.5000"), "a");
+    Assertions.assertEquals("a", index.resolve(DocVersion.fromString("v1.5000.9")));
+    Assertions.assertEquals("b", index.resolve(DocVersion.fromString("v1.5002")));
+  }
+}
@@ -22,13 +22,16 @@ import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class YamlUtilitiesTest {
 
@@ -121,4 +124,107 @@ class YamlUtilitiesTest {
     Assertions.assertEquals(expected, actual);
   }
 
+  @Test
+  void testWriteMarkdownFromDocument(@TempDir final Path tempDir) throws IOException {
+    final Path out = tempDir.resolve("out.md");
+    final Path markdownFile = YamlUtilitiesTest.TEST_RESOURCES_PATH.resolve("testMarkdownFile.md");
+    final Path resultFile = YamlUtilitiesTest.TEST_RESOURCES_PATH.resolve("replacedResult.txt");
+    final MarkdownDocument doc = new DocumentCache(
+        new PreprocessorConfig(Path.of("."), Path.of("."), List.of("v1"), false, false,
+            WatchMode.NONE))
+        .get(markdownFile);
+    Assertions.assertEquals("Red", doc.frontMatter.get("color"));
+
+    YamlUtilities.writeMarkdown(doc, YamlUtilities.parseYamlFromString(this.sampleYamlString()),
+        out);
+    Assertions.assertEquals(-1L, Files.mismatch(resultFile, out));
+  }
+
+  @Test
+  void testCacheRereadsChangedFiles(@TempDir final Path tempDir) throws IOException {
+    final Path source = tempDir.resolve("cached.md");
+    Files.writeString(source, "---\ntitle: First\n---\nbody");
+    final DocumentCache cache = new DocumentCache(
+        new PreprocessorConfig(tempDir, tempDir, List.of("v1"), false, false,
+            WatchMode.WATCH_ONLY));
+    final MarkdownDocument first = cache.get(source);
+    Assertions.assertSame(first, cache.get(source));
+
+    Files.writeString(source, "---\ntitle: Second\n---\nbody");
+    Files.setLastModifiedTime(source, FileTime.fromMillis(first.modified + 5000));
+    final MarkdownDocument second = cache.get(source);
+    Assertions.assertEquals("Second", second.frontMatter.get("title"));
+    Assertions.assertSame(second, cache.get(source));
+    Assertions.assertEquals(1, cache.size());
+  }
+
+  @Test
+  void testSpliceKeepsBodyBytes(@TempDir final Path tempDir) throws IOException {
+    final Path source = tempDir.resolve("crlf.md");
+    final Path out = tempDir.resolve("out.md");
+    final String body = "# Title\r\nno final line break";
+    Files.writeString(source, "---\r\ntitle: CRLF\r\n---\r\n" + body);
+    final MarkdownDocument doc = new DocumentCache(
+        new PreprocessorConfig(tempDir, tempDir, List.of("v1"), false, false, WatchMode.NONE))
+        .get(source);
+    Assertions.assertEquals("CRLF", doc.frontMatter.get("title"));
+
+    YamlUtilities.writeMarkdown(doc, doc.copyOfFrontMatter(), out);
+    Assertions.assertEquals("---\r\ntitle: CRLF\r\n\r\n---\r\n" + body, Files.readString(out));
+
+    // Appended version keys keep the line break as well
+    YamlUtilities.injectVersions(doc, Set.of(DocVersion.first()), DocVersion.first(), out);
+    Assertions.assertEquals("---\r\ntitle: CRLF\r\nthis_version: v1\r\nall_versions:\r\n"
+        + "- v1\r\nisLatest: true\r\n---\r\n" + body, Files.readString(out));
+  }
+
+  @Test
+  void testVersionBlocksAreBounded() {
+    for (int i = 0; i <= YamlUtilities.VERSION_BLOCKS_LIMIT; i++) {
+      final DocVersion version = new DocVersion(1, i);
+      YamlUtilities.versionFrontMatter(Set.of(version), version, "\n");
+    }
+    Assertions.assertTrue(
+        YamlUtilities.VERSION_BLOCKS.size() <= YamlUtilities.VERSION_BLOCKS_LIMIT);
+  }
+
+  @Test
+  void testInjectVersionsKeepsFrontMatter(@TempDir final Path tempDir) throws IOException {
+    final String nl = System.lineSeparator();
+    final Path source = tempDir.resolve("ordered.md");
+    final Path out = tempDir.resolve("out.md");
+    Files.writeString(source, "---" + nl + "# keep me" + nl + "zeta: 1" + nl + "alpha: 2" + nl
+        + "---" + nl + "body");
+    final PreprocessorConfig config =
+        new PreprocessorConfig(tempDir, tempDir, List.of("v1", "v2"), false, false, WatchMode.NONE);
+    final MarkdownDocument doc = new DocumentCache(config).get(source);
+
+    YamlUtilities.injectVersions(doc, config.versions, DocVersion.fromString("v1"), out);
+    final String expected = "---" + nl + "# keep me" + nl + "zeta: 1" + nl + "alpha: 2" + nl
+        + "this_version: v1" + nl + "all_versions:" + nl + "- v1" + nl + "- v2" + nl
+        + "isLatest: false" + nl + "---" + nl + "body";
+    Assertions.assertEquals(expected, Files.readString(out));
+  }
+
+  @Test
+  void testFlowFrontMatterIsDumped(@TempDir final Path tempDir) throws IOException {
+    Assertions.assertTrue(YamlUtilities.canAppendKeys("title: x\n# comment\n"));
+    Assertions.assertTrue(YamlUtilities.canAppendKeys(""));
+    Assertions.assertFalse(YamlUtilities.canAppendKeys("{title: x}\n"));
+    Assertions.assertFalse(YamlUtilities.canAppendKeys("title: x\n...\n"));
+    Assertions.assertFalse(YamlUtilities.canAppendKeys("title: x\nnotes: |\n# only\n"));
+
+    final Path source = tempDir.resolve("flow.md");
+    final Path out = tempDir.resolve("out.md");
+    Files.writeString(source, "---\n{title: Flow}\n---\nbody");
+    final PreprocessorConfig config =
+        new PreprocessorConfig(tempDir, tempDir, List.of("v1", "v2"), false, false, WatchMode.NONE);
+    config.preserveFrontMatter = true;
+    new PageStructure(source, config, new DocumentCache(config))
+        .copyMarkdown(config.versions, DocVersion.fromString("v2"), source, out);
+    final Map<String, Object> yaml = YamlUtilities.parseYamlFromMarkdown(out);
+    Assertions.assertEquals("Flow", yaml.get("title"));
+    Assertions.assertEquals("v2", yaml.get(PreprocessorConfig.DOC_THIS_VERSION));
+  }
+
 }